@@ -0,0 +1,222 @@
+package db.framework.runner;
+
+import db.framework.utils.Cookies;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of browser sessions shared by the runner threads.
+ * <p>
+ * Each thread works on the driver bound to it by {@link MainRunner#getWebDriver()}. A released driver is
+ * scrubbed (cookies, web storage, about:blank) and handed to the next thread that needs one instead of
+ * launching a new browser. Drivers are checked before they are handed out and recycled after
+ * "driver_max_reuse" scenarios (default 20).
+ * </p>
+ * <p>
+ * "driver_pool_warm" idle browsers are kept launched in the background (default 1 when "reset_browser"
+ * is on, 0 otherwise). Warm browsers are only kept when the proxy is disabled, since every new browser
+ * restarts the shared BrowserMob proxy.
+ * </p>
+ */
+public class DriverPool {
+    private static final String CLEAR_STORAGE_SCRIPT =
+            "try{window.localStorage.clear();}catch(e){}try{window.sessionStorage.clear();}catch(e){}";
+    private static final long LAUNCH_POLL = 1000L;
+
+    private static final LinkedBlockingDeque<WebDriver> idle = new LinkedBlockingDeque<>();
+    private static final Map<WebDriver, PooledDriver> drivers = new ConcurrentHashMap<>();
+    private static final AtomicInteger launching = new AtomicInteger();
+    private static final int maxReuse = Math.max(1, getParam("driver_max_reuse", 20));
+    private static final int warmSize = getParam("driver_pool_warm", isResetBrowser() ? 1 : 0);
+    private static ExecutorService warmer;
+
+    /**
+     * Takes a healthy idle driver or launches a new one
+     *
+     * @return driver or null if no browser could be launched
+     */
+    public static WebDriver acquire() {
+        try {
+            WebDriver driver;
+            while ((driver = pollIdle()) != null) {
+                PooledDriver pooled = drivers.get(driver);
+                if (pooled != null && isHealthy(driver)) {
+                    pooled.uses++;
+                    return driver;
+                }
+                System.err.println("-->DriverPool: dropping unresponsive browser");
+                discard(driver, true);
+            }
+            driver = MainRunner.createWebDriver();
+            if (driver != null)
+                drivers.put(driver, new PooledDriver(1));
+            return driver;
+        } finally {
+            replenish();
+        }
+    }
+
+    /**
+     * Gives a driver back for reuse by another thread. The driver must still be bound to the calling
+     * thread, it is scrubbed through {@link MainRunner#getWebDriver()}.
+     *
+     * @param driver driver to release
+     */
+    public static void release(WebDriver driver) {
+        PooledDriver pooled = driver == null ? null : drivers.get(driver);
+        if (pooled == null)
+            return;
+        if (pooled.uses >= maxReuse) {
+            System.out.println("-->DriverPool: recycling browser after " + pooled.uses + " scenario(s)");
+            discard(driver, true);
+        } else if (scrub(driver)) {
+            idle.offerFirst(driver);
+        } else {
+            discard(driver, true);
+        }
+        replenish();
+    }
+
+    /**
+     * Removes a driver from the pool
+     *
+     * @param driver driver to remove
+     * @param quit   whether to close the browser
+     */
+    public static void discard(WebDriver driver, boolean quit) {
+        if (driver == null)
+            return;
+        drivers.remove(driver);
+        idle.remove(driver);
+        if (quit)
+            quitQuietly(driver);
+    }
+
+    /**
+     * Gets all drivers of the pool, idle or in use
+     *
+     * @return drivers
+     */
+    public static List<WebDriver> getDrivers() {
+        return new ArrayList<>(drivers.keySet());
+    }
+
+    /**
+     * Stops launching browsers and closes every browser of the pool
+     */
+    public static void quitAll() {
+        synchronized (DriverPool.class) {
+            if (warmer != null) {
+                warmer.shutdownNow();
+                warmer = null;
+            }
+        }
+        for (WebDriver driver : getDrivers())
+            discard(driver, true);
+    }
+
+    // wait for a browser the warmer is launching rather than starting another one
+    private static WebDriver pollIdle() {
+        WebDriver driver = idle.pollFirst();
+        try {
+            while (driver == null && launching.get() > 0)
+                driver = idle.pollFirst(LAUNCH_POLL, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return driver;
+    }
+
+    private static synchronized void replenish() {
+        if (warmSize <= 0 || !MainRunner.disableProxy)
+            return;
+        if (warmer == null) {
+            warmer = Executors.newSingleThreadExecutor(r -> {
+                Thread th = new Thread(r, "DriverPool-warmer");
+                th.setDaemon(true);
+                return th;
+            });
+        }
+        while (idle.size() + launching.get() < warmSize) {
+            launching.incrementAndGet();
+            warmer.submit(() -> {
+                try {
+                    long ts = System.currentTimeMillis();
+                    WebDriver driver = MainRunner.createWebDriver();
+                    if (driver != null) {
+                        drivers.put(driver, new PooledDriver(0));
+                        idle.offerLast(driver);
+                        System.out.println("-->DriverPool: warm browser ready in " + (System.currentTimeMillis() - ts) + " ms");
+                    }
+                } finally {
+                    launching.decrementAndGet();
+                }
+            });
+        }
+    }
+
+    private static boolean scrub(WebDriver driver) {
+        try {
+            Cookies.deleteAllCookies();
+            ((JavascriptExecutor) driver).executeScript(CLEAR_STORAGE_SCRIPT);
+            driver.get("about:blank");
+            return true;
+        } catch (Exception e) {
+            System.err.println("-->DriverPool: cannot reset browser state: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private static boolean isHealthy(WebDriver driver) {
+        try {
+            driver.getWindowHandle();
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private static void quitQuietly(WebDriver driver) {
+        try {
+            driver.quit();
+        } catch (Exception e) {
+            // browser already gone
+        }
+    }
+
+    private static boolean isResetBrowser() {
+        String resetBrowser = MainRunner.getExParams("reset_browser");
+        return resetBrowser != null && resetBrowser.matches("true|t");
+    }
+
+    private static int getParam(String name, int defaultValue) {
+        String value = MainRunner.getExParams(name);
+        try {
+            return value == null ? defaultValue : Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            System.err.println("-->DriverPool: invalid value for " + name + ": " + value);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Pooling state of one browser
+     */
+    private static class PooledDriver {
+        private volatile int uses;
+
+        PooledDriver(int uses) {
+            this.uses = uses;
+        }
+    }
+}
@@ -1,6 +1,11 @@
 package db.framework.runner;
 
 import com.google.gson.Gson;
+import db.framework.utils.ElementIndex;
+import db.framework.utils.HarRecorder;
+import db.framework.utils.LocatorCache;
+import db.framework.utils.LockService;
+import db.framework.utils.ProxyCache;
 import db.framework.utils.ProxyFilters;
 import db.framework.utils.Utils;
 import net.lightbody.bmp.BrowserMobProxy;
@@ -26,6 +31,7 @@ import java.net.URLDecoder;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
@@ -117,27 +123,22 @@ public class MainRunner {
     public static int timeout = 30; // set the general default timeout to 30 seconds
 
 
-    /**
-     * List containing URL's that have been visited
-     */
-    public static ArrayList<String> URLStack = new ArrayList<>();
-
     /**
      * Path to project currently being run
      */
     public static String project = null;
     /**
-     * The current URL
+     * The last URL any browser was sent to, see {@link NavigationTracker}. With parallel workers it may be
+     * the url of another worker's browser, use {@link #getURLStack()} for the browser of this thread.
      */
-    public static String currentURL;
+    public static volatile String currentURL;
     /**
      * Whether the proxy is disabled
      */
     public static boolean disableProxy = true;
 
-    private static WebDriver driver = null;
+    private static final ThreadLocal<WebDriver> driver = new ThreadLocal<>();
     private static long ieAuthenticationTs = System.currentTimeMillis() - 10000; // set authentication checking interval out of range
-    private static String browsermobServerHarTs = System.currentTimeMillis() + "";
 
     /**
      * Gets whether or not debug mode is on
@@ -150,14 +151,32 @@ public class MainRunner {
     }
 
     /**
-     * Resets the driver
+     * Resets the driver of the current thread. The next {@link #getWebDriver()} gets a clean browser from
+     * the {@link DriverPool}.
      *
-     * @param quit whether to close the driver
+     * @param quit false to leave the browser open as it is (e.g. to debug a failed scenario)
      */
     public static void resetDriver(boolean quit) {
-        if (quit)
-            MainRunner.driver.quit();
-        MainRunner.driver = null;
+        if (quit) {
+            releaseDriver();
+            return;
+        }
+        WebDriver current = MainRunner.driver.get();
+        MainRunner.driver.remove();
+        DriverPool.discard(current, false);
+    }
+
+    /**
+     * Scrubs the driver of the current thread and gives it back to the {@link DriverPool} for reuse
+     */
+    public static void releaseDriver() {
+        WebDriver current = MainRunner.driver.get();
+        try {
+            // still bound to this thread while it is scrubbed
+            DriverPool.release(current);
+        } finally {
+            MainRunner.driver.remove();
+        }
     }
 
     /**
@@ -166,55 +185,85 @@ public class MainRunner {
      * @return true if a valid web driver is active
      */
     public static Boolean driverInitialized() {
-        return MainRunner.driver == null;
+        return MainRunner.driver.get() == null;
     }
 
     /**
-     * Gets the current webDriver instance or tries to create one
+     * Gets the list of URL's visited by the browser of the current thread, oldest first
+     *
+     * @return visited URL's
+     */
+    public static List<String> getURLStack() {
+        WebDriver current = MainRunner.driver.get();
+        NavigationTracker tracker = current == null ? null : NavigationTracker.of(current);
+        return tracker == null ? new ArrayList<>() : tracker.getHistory(current);
+    }
+
+    /**
+     * Clears the list of URL's visited by the browser of the current thread
+     */
+    public static void resetURLStack() {
+        WebDriver current = MainRunner.driver.get();
+        NavigationTracker tracker = current == null ? null : NavigationTracker.of(current);
+        if (tracker != null)
+            tracker.clear();
+    }
+
+    /**
+     * Gets the webDriver instance of the current thread or takes one from the {@link DriverPool}
      *
      * @return current webDriver instance
      */
     public static WebDriver getWebDriver() {
-        try {
-            if (MainRunner.driver != null) {
-                currentURL = MainRunner.getCurrentUrl();
-                if (!URLStack.get(URLStack.size() - 1).equals(currentURL))
-                    URLStack.add(currentURL);
-            }
-        } catch (Exception e) {
-        }
+        WebDriver current = MainRunner.driver.get();
+        if (current != null)
+            return current;
 
-        if (MainRunner.driver != null)
-            return MainRunner.driver;
+        current = DriverPool.acquire();
+        if (current == null) {
+            System.err.println("Cannot initialize driver: exiting test...");
+            System.exit(-1);
+        }
+        MainRunner.driver.set(current);
+        return current;
+    }
 
+    /**
+     * Launches and sets up a new browser
+     *
+     * @return new webDriver instance or null if the browser could not be started
+     */
+    static WebDriver createWebDriver() {
         for (int i = 0; i < 2; i++) {
-            if (MainRunner.disableProxy) {
-                initDriver(null);
-            } else {
-                initProxyServer();
-            }
-
+            WebDriver created = null;
             try {
+                if (MainRunner.disableProxy) {
+                    created = initDriver(null);
+                } else {
+                    created = initProxyServer();
+                }
+
                 if (MainRunner.browser.equals("safari")) {
                     Dimension dimension = new Dimension(1280, 1024);
-                    MainRunner.driver.manage().window().setSize(dimension);
+                    created.manage().window().setSize(dimension);
                 } else
-                    MainRunner.driver.manage().window().maximize();
+                    created.manage().window().maximize();
 
-                String window_size = MainRunner.driver.manage().window().getSize().toString();
+                String window_size = created.manage().window().getSize().toString();
                 System.out.println("Init driver: browser window size = " + window_size);
-                return MainRunner.driver;
+                return NavigationTracker.wrap(created);
             } catch (Exception ex) {
                 System.err.println("-->Failed initialized driver:retry" + i + ":" + ex.getMessage());
+                if (created != null) {
+                    try {
+                        created.quit();
+                    } catch (Exception e) {
+                    }
+                }
                 Utils.threadSleep(2000, null);
             }
         }
-
-        System.err.println("Cannot initialize driver: exiting test...");
-        System.exit(-1);
-        // return is unreachable but IDE doesn't realize, return non-null
-        // to get rid of invalid lint errors
-        return new ChromeDriver();
+        return null;
     }
 
     /**
@@ -317,9 +366,9 @@ public class MainRunner {
      * Closes a firefox alert if present
      */
     public static void closeAlert() {
-        if (MainRunner.driver != null) {
+        if (MainRunner.driver.get() != null) {
             try {
-                MainRunner.driver.switchTo().alert().accept();
+                MainRunner.driver.get().switchTo().alert().accept();
             } catch (org.openqa.selenium.NoAlertPresentException e) {
                 System.out.println("No alert to close");
             }
@@ -359,7 +408,8 @@ public class MainRunner {
         }
     }
 
-    private static void initDriver(DesiredCapabilities capabilities) {
+    private static WebDriver initDriver(DesiredCapabilities capabilities) {
+        WebDriver driver = null;
         if (capabilities == null)
             capabilities = initCapabilities();
         switch (MainRunner.browser) {
@@ -407,6 +457,7 @@ public class MainRunner {
         }
 
         Utils.PageHangWatchDog.init();
+        return driver;
     }
 
     private static String defaultBrowserVersion() {
@@ -438,15 +489,22 @@ public class MainRunner {
         }
     }
 
-    private static void initProxyServer() {
-        if (browsermobServer != null) {
-            System.err.println("-->Aborting prev proxy server:" + browsermobServer.getPort());
-            try {
-                browsermobServer.abort();
-            } catch (Exception ex) {
-                System.err.println("-->Failed to abort prev proxy server:" + browsermobServer.getPort());
-            }
-        }
+    private static WebDriver initProxyServer() {
+        Proxy seleniumProxy = ClientUtil.createSeleniumProxy(startProxyServer());
+        DesiredCapabilities capabilities = initCapabilities();
+        capabilities.setCapability(CapabilityType.PROXY, seleniumProxy);
+        return initDriver(capabilities);
+    }
+
+    /**
+     * Starts the proxy server shared by all browsers of the run, does nothing if it is already running.
+     * The parallel runner starts it before its workers, a restart would cut the other browsers off.
+     *
+     * @return running proxy server
+     */
+    static synchronized BrowserMobProxy startProxyServer() {
+        if (browsermobServer != null && browsermobServer.isStarted())
+            return browsermobServer;
 
         System.out.print("Initializing proxy server...");
         int port = 7000;
@@ -469,13 +527,10 @@ public class MainRunner {
             System.exit(-1);
         }
 
-        Proxy seleniumProxy = ClientUtil.createSeleniumProxy(browsermobServer);
-        DesiredCapabilities capabilities = initCapabilities();
-        capabilities.setCapability(CapabilityType.PROXY, seleniumProxy);
-        initDriver(capabilities);
-        browsermobServer.newHar(browsermobServerHarTs);
+        HarRecorder.configure(browsermobServer);
         browsermobServer.addRequestFilter(new ProxyFilters.ProxyRequestFilter(url));
         browsermobServer.addResponseFilter(new ProxyFilters.ProxyResponseFilter());
+        return browsermobServer;
     }
 
     /**
@@ -590,6 +645,8 @@ public class MainRunner {
         }
         if (project != null)
             System.out.println("-->Current project: " + project);
+        // index all page elements before the first scenario needs one
+        ElementIndex.get();
         System.out.println("-->Running with parameters:\n" + featureScenarios);
         if (MainRunner.workspace != null && !MainRunner.workspace.isEmpty())
             for (int i = 0; i < featureScenarios.size(); i++) {
@@ -609,12 +666,24 @@ public class MainRunner {
             featureScenarios.add("--glue");
         }
         featureScenarios.add("db.shared.steps");
-        featureScenarios.add("--plugin");
-        featureScenarios.add("html:logs");
 
         try {
-            runStatus = cucumber.api.cli.Main.run(featureScenarios.toArray(new String[featureScenarios.size()]),
-                    Thread.currentThread().getContextClassLoader());
+            int workers = ParallelRunner.getWorkerCount();
+            // shards run their part of the scenarios one by one
+            if (workers > 1 || ScenarioScheduler.getShardCount() > 1) {
+                int optionIndex = featureScenarios.indexOf(featureScenarios.contains("--tags") ? "--tags" : "--glue");
+                List<String> units = ParallelRunner.expand(featureScenarios.subList(0, optionIndex));
+                List<String> options = featureScenarios.subList(optionIndex, featureScenarios.size());
+                releaseDriver();
+                if (!MainRunner.disableProxy)
+                    startProxyServer();
+                runStatus = new ParallelRunner(workers, options).run(units);
+            } else {
+                featureScenarios.add("--plugin");
+                featureScenarios.add("html:logs");
+                runStatus = cucumber.api.cli.Main.run(featureScenarios.toArray(new String[featureScenarios.size()]),
+                        Thread.currentThread().getContextClassLoader());
+            }
         } catch (Throwable e) {
             e.printStackTrace();
             runStatus = 1;
@@ -643,23 +712,34 @@ public class MainRunner {
     }
 
     private static void close() {
+        ScenarioScheduler.saveHistory(new File(MainRunner.logs, "cucumber.json"));
+        ProxyCache.shutdown();
+        LockService.printStats();
+        LocatorCache.printStats();
         if (MainRunner.browser.equals("none"))
             return;
         else if (MainRunner.closeBrowserAtExit) {
             System.out.println("Closing driver...");
-            if (MainRunner.driver != null)
-                driverQuit();
+            MainRunner.driver.remove();
+            DriverPool.quitAll();
         }
     }
 
-    private static void driverQuit() {
-        try {
-            MainRunner.driver.quit();
-        } catch (Exception e) {
-        }
+    /**
+     * Asks a browser for its current url, looking for the IE authentication popup first if needed
+     *
+     * @param driver browser
+     * @return current url
+     */
+    static String getCurrentUrl(WebDriver driver) {
+        checkIEAuthentication();
+        return (driver.getCurrentUrl());
     }
 
-    private static String getCurrentUrl() {
+    /**
+     * Logs in the IE windows authentication popup, runs during the first 10 seconds of every hour
+     */
+    static void checkIEAuthentication() {
         // IE windows authentication popup disapears when MainRunner.driver.getCurrentUrl() executed
         // so need to hook the function and wait for 10 seconds to look for the IE window authentication popup
         // and repeat every 1 hour
@@ -680,7 +760,6 @@ public class MainRunner {
             if (cs - ieAuthenticationTs > 3600000)
                 ieAuthenticationTs = cs;
         }
-        return (MainRunner.driver.getCurrentUrl());
     }
 
     /**
@@ -778,7 +857,7 @@ public class MainRunner {
                     p = getRuntime().exec(file_path);
                     Utils.ProcessWatchDog pd = new Utils.ProcessWatchDog(p, 5000l, "runFirefoxBackgroundMethod()");
                     p.waitFor();  // wait for process to complete
-                    pd.interrupt();
+                    pd.cancel();
                 } catch (Exception e) {
                     // ignore all errors
                 }
@@ -812,7 +891,7 @@ public class MainRunner {
                     p = getRuntime().exec(file_path);
                     Utils.ProcessWatchDog pd = new Utils.ProcessWatchDog(p, 20000l, "runSafariBackgroundMethod()");
                     p.waitFor();  // wait for process to complete
-                    pd.interrupt();
+                    pd.cancel();
                 } catch (Exception e) {
                     e.printStackTrace();
                     // ignore all errors
@@ -846,7 +925,16 @@ public class MainRunner {
 
             while (true) {
                 Utils.threadSleep(4000, null);
-                curl = MainRunner.getWebDriver().getCurrentUrl();
+                // this thread has no driver of its own, watch the first browser of the pool
+                List<WebDriver> drivers = DriverPool.getDrivers();
+                if (drivers.isEmpty())
+                    continue;
+                WebDriver driver = drivers.get(0);
+                try {
+                    curl = driver.getCurrentUrl();
+                } catch (Exception e) {
+                    continue;
+                }
                 // current url is still the same domain, then skip
                 if (curl.contains(org_url))
                     continue;
@@ -858,13 +946,13 @@ public class MainRunner {
                 // there seems to be Chrome Authentication Required Popup
                 try {
                     if (width == -1) {
-                        width = MainRunner.driver.manage().window().getSize().width;
+                        width = driver.manage().window().getSize().width;
                         file_path = file_path + " " + width;
                     }
                     p = getRuntime().exec(file_path);
                     Utils.ProcessWatchDog pd = new Utils.ProcessWatchDog(p, 10000, "runChromeBackgroundMethod()");
                     p.waitFor();  // wait for process to complete
-                    pd.interrupt();
+                    pd.cancel();
                 } catch (Exception e) {
                     // ignore all errors
                 }
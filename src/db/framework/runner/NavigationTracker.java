@@ -0,0 +1,165 @@
+package db.framework.runner;
+
+import db.framework.utils.ReadinessSync;
+import db.framework.utils.Utils;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.support.events.AbstractWebDriverEventListener;
+import org.openqa.selenium.support.events.EventFiringWebDriver;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Keeps the url history of a browser from its navigation events instead of asking the browser.
+ * <p>
+ * Every driver of the {@link DriverPool} is wrapped in an {@link EventFiringWebDriver} with its own tracker.
+ * A "get" records its url right away. Back, forward, refresh and clicks may change the page to an unknown
+ * url, the tracker then asks the browser once, the next time the url is needed. The last "url_history"
+ * (default 50) urls are kept.
+ * </p>
+ */
+public class NavigationTracker extends AbstractWebDriverEventListener {
+    private static final int capacity = Math.max(2, Utils.parseInt(MainRunner.getExParams("url_history"), 50));
+    private static final Map<WebDriver, NavigationTracker> trackers = new WeakHashMap<>();
+
+    private final ArrayDeque<String> history = new ArrayDeque<>(capacity);
+    private boolean stale;
+
+    /**
+     * Wraps a new driver to track its navigation
+     *
+     * @param driver driver to wrap
+     * @return wrapped driver, use it instead of the given one
+     */
+    static WebDriver wrap(WebDriver driver) {
+        NavigationTracker tracker = new NavigationTracker();
+        EventFiringWebDriver wrapped = new EventFiringWebDriver(driver).register(tracker);
+        synchronized (trackers) {
+            trackers.put(wrapped, tracker);
+        }
+        return wrapped;
+    }
+
+    /**
+     * Gets the tracker of a driver
+     *
+     * @param driver wrapped driver
+     * @return tracker or null if the driver is not tracked
+     */
+    static NavigationTracker of(WebDriver driver) {
+        synchronized (trackers) {
+            return trackers.get(driver);
+        }
+    }
+
+    /**
+     * Gets the visited urls, oldest first
+     *
+     * @param driver browser, the url of its page is asked for if it may have changed since the last event
+     * @return visited urls
+     */
+    public synchronized List<String> getHistory(WebDriver driver) {
+        if (stale) {
+            stale = false;
+            try {
+                record(MainRunner.getCurrentUrl(driver));
+            } catch (Exception e) {
+                // the browser is busy or gone, keep the known history
+            }
+        }
+        return new ArrayList<>(history);
+    }
+
+    /**
+     * Gets the last url the browser navigated to, without asking the browser
+     *
+     * @return last known url or null
+     */
+    public synchronized String getLastUrl() {
+        return history.peekLast();
+    }
+
+    /**
+     * Clears the history
+     */
+    public synchronized void clear() {
+        history.clear();
+        stale = false;
+    }
+
+    private synchronized void record(String url) {
+        if (url == null || url.equals(history.peekLast()))
+            return;
+        if (history.size() == capacity)
+            history.removeFirst();
+        history.addLast(url);
+    }
+
+    private synchronized void changed() {
+        stale = true;
+    }
+
+    @Override
+    public void beforeNavigateTo(String url, WebDriver driver) {
+        Utils.PageHangWatchDog.start(driver, url);
+    }
+
+    @Override
+    public void afterNavigateTo(String url, WebDriver driver) {
+        Utils.PageHangWatchDog.finish(driver);
+        record(url);
+        MainRunner.currentURL = url;
+        MainRunner.checkIEAuthentication();
+        ReadinessSync.markNavigation();
+    }
+
+    @Override
+    public void beforeNavigateBack(WebDriver driver) {
+        Utils.PageHangWatchDog.start(driver, "back from " + getLastUrl());
+    }
+
+    @Override
+    public void afterNavigateBack(WebDriver driver) {
+        Utils.PageHangWatchDog.finish(driver);
+        changed();
+        ReadinessSync.markNavigation();
+    }
+
+    @Override
+    public void beforeNavigateForward(WebDriver driver) {
+        Utils.PageHangWatchDog.start(driver, "forward from " + getLastUrl());
+    }
+
+    @Override
+    public void afterNavigateForward(WebDriver driver) {
+        Utils.PageHangWatchDog.finish(driver);
+        changed();
+        ReadinessSync.markNavigation();
+    }
+
+    @Override
+    public void beforeNavigateRefresh(WebDriver driver) {
+        Utils.PageHangWatchDog.start(driver, "refresh of " + getLastUrl());
+    }
+
+    @Override
+    public void afterNavigateRefresh(WebDriver driver) {
+        Utils.PageHangWatchDog.finish(driver);
+        ReadinessSync.markNavigation();
+    }
+
+    @Override
+    public void afterClickOn(WebElement element, WebDriver driver) {
+        changed();
+        ReadinessSync.markNavigation();
+    }
+
+    @Override
+    public void onException(Throwable throwable, WebDriver driver) {
+        Utils.PageHangWatchDog.finish(driver);
+    }
+}
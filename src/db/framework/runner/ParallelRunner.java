@@ -0,0 +1,229 @@
+package db.framework.runner;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+import db.framework.utils.Utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs scenarios on several worker threads, each with its own browser from the {@link DriverPool}.
+ * <p>
+ * Every scenario is a separate cucumber run writing its own json report and html report to logs/parallel/;
+ * the json reports are merged into logs/cucumber.json once all scenarios are done. The number of workers is
+ * given by the "parallel_workers" env variable or ex_param. Scenarios are started longest first and may be
+ * split across shards (build agents) by the {@link ScenarioScheduler}. All browsers share one proxy server.
+ * </p>
+ * Scenarios running at the same time must not depend on shared state, e.g. the same database rows. Tag such
+ * scenarios or their feature with {@value ScenarioScheduler#TAG_SERIAL}, they run one by one on this thread
+ * once the other scenarios are done.
+ */
+public class ParallelRunner {
+    private static final Type FEATURES = new TypeToken<List<Map<String, Object>>>() {
+    }.getType();
+
+    private final int workers;
+    private final List<String> options;
+    private final File reportDir;
+
+    /**
+     * Creates a parallel runner
+     *
+     * @param workers number of worker threads
+     * @param options cucumber options (--tags, --glue...) used for every scenario
+     */
+    public ParallelRunner(int workers, List<String> options) {
+        this.workers = workers;
+        this.options = options;
+        this.reportDir = new File(MainRunner.logs, "parallel");
+    }
+
+    /**
+     * Gets the number of workers from "parallel_workers"
+     *
+     * @return number of workers, 1 if not set
+     */
+    public static int getWorkerCount() {
+        return Math.max(1, Utils.parseInt(MainRunner.getExParams("parallel_workers"), 1));
+    }
+
+    /**
+     * Splits feature paths into one "path:line" entry per scenario
+     *
+     * @param paths feature paths, optionally followed by ":line" numbers
+     * @return one entry per scenario
+     */
+    public static List<String> expand(List<String> paths) {
+        List<String> units = new ArrayList<>();
+        for (String path : paths) {
+            String[] parts = path.split(":");
+            int first = 1;
+            // keep windows drive letters with the path
+            String feature = parts[0];
+            if (parts.length > 1 && parts[0].length() == 1) {
+                feature += ":" + parts[1];
+                first = 2;
+            }
+            if (parts.length > first) {
+                for (int i = first; i < parts.length; i++)
+                    units.add(feature + ":" + parts[i]);
+                continue;
+            }
+            List<Map<String, Object>> featureList = new Gson().fromJson(Utils.gherkinTojson(false, feature), FEATURES);
+            for (Map<String, Object> featureInfo : featureList) {
+                for (Object element : elements(featureInfo)) {
+                    if (element instanceof Map && !"background".equals(((Map<?, ?>) element).get("type")))
+                        units.add(feature + ":" + Utils.parseInt(((Map<?, ?>) element).get("line"), 0));
+                }
+            }
+        }
+        return units;
+    }
+
+    /**
+     * Runs the scenarios and merges their reports
+     *
+     * @param units scenarios as "path:line"
+     * @return 0 if all scenarios passed
+     * @throws InterruptedException if interrupted while waiting for the workers
+     */
+    public int run(List<String> units) throws InterruptedException {
+        return run(ScenarioScheduler.plan(units, workers));
+    }
+
+    /**
+     * Runs the scenarios of a plan in its order and merges their reports
+     *
+     * @param plan scenarios to run, see {@link ScenarioScheduler}
+     * @return 0 if all scenarios passed
+     * @throws InterruptedException if interrupted while waiting for the workers
+     */
+    public int run(ScenarioScheduler.Plan plan) throws InterruptedException {
+        List<ScenarioScheduler.Unit> units = plan.getUnits();
+        Utils.createDirectory(reportDir.getPath(), true);
+        System.out.println("-->ParallelRunner: running " + units.size() + " scenario(s) on " + workers + " worker(s)");
+
+        long ts = System.currentTimeMillis();
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(workers,
+                r -> new Thread(r, "ParallelRunner-worker-" + threadCount.incrementAndGet()));
+        List<Future<Integer>> results = new ArrayList<>();
+        List<File> reports = new ArrayList<>();
+        List<ScenarioScheduler.Unit> serial = new ArrayList<>();
+        // longest first, each free worker takes the next one
+        for (ScenarioScheduler.Unit unit : units) {
+            if (unit.isSerial()) {
+                serial.add(unit);
+                continue;
+            }
+            File report = new File(reportDir, "unit-" + reports.size() + ".json");
+            reports.add(report);
+            results.add(executor.submit(() -> runUnit(plan, unit, report)));
+        }
+        executor.shutdown();
+
+        int status = 0;
+        for (Future<Integer> result : results) {
+            try {
+                status |= result.get();
+            } catch (ExecutionException e) {
+                e.getCause().printStackTrace();
+                status = 1;
+            }
+        }
+        if (!serial.isEmpty())
+            System.out.println("-->ParallelRunner: running " + serial.size() + " " + ScenarioScheduler.TAG_SERIAL + " scenario(s)");
+        for (ScenarioScheduler.Unit unit : serial) {
+            File report = new File(reportDir, "unit-" + reports.size() + ".json");
+            reports.add(report);
+            status |= runUnit(plan, unit, report);
+        }
+        mergeReports(reports, new File(MainRunner.logs, "cucumber.json"));
+        long makespan = System.currentTimeMillis() - ts;
+        System.out.println("-->ParallelRunner: finished in " + Utils.toDuration(makespan));
+        plan.report(makespan, new File(MainRunner.logs, "schedule.json"));
+        return status;
+    }
+
+    private int runUnit(ScenarioScheduler.Plan plan, ScenarioScheduler.Unit unit, File report) {
+        long ts = System.currentTimeMillis();
+        List<String> args = new ArrayList<>();
+        args.add(unit.getPath());
+        args.addAll(options);
+        args.add("--plugin");
+        args.add("json:" + report.getPath());
+        args.add("--plugin");
+        args.add("html:" + report.getPath().replaceFirst("\\.json$", ""));
+        try {
+            byte status = cucumber.api.cli.Main.run(args.toArray(new String[args.size()]),
+                    Thread.currentThread().getContextClassLoader());
+            System.out.println("-->ParallelRunner: " + unit.getPath() + " " + (status == 0 ? "passed" : "failed") +
+                    " in " + Utils.toDuration(System.currentTimeMillis() - ts));
+            return status;
+        } catch (Throwable e) {
+            System.err.println("-->ParallelRunner: " + unit.getPath() + " failed: " + e.getMessage());
+            e.printStackTrace();
+            return 1;
+        } finally {
+            plan.done(unit, System.currentTimeMillis() - ts);
+            // hand the browser to the next scenario
+            MainRunner.releaseDriver();
+        }
+    }
+
+    // the scenarios of a feature of a gherkin or cucumber json report
+    private static List<?> elements(Map<String, Object> feature) {
+        Object elements = feature.get("elements");
+        return elements instanceof List ? (List<?>) elements : Collections.emptyList();
+    }
+
+    /**
+     * Merges cucumber json reports, scenarios of the same feature are put under one feature entry
+     *
+     * @param reports reports to merge, in run order
+     * @param target  merged report
+     */
+    public static void mergeReports(List<File> reports, File target) {
+        Map<Object, Map<String, Object>> features = new LinkedHashMap<>();
+        Map<Object, List<Object>> elements = new LinkedHashMap<>();
+        Gson gson = new Gson();
+        for (File report : reports) {
+            if (!report.exists())
+                continue;
+            try {
+                List<Map<String, Object>> featureList = gson.fromJson(new String(Files.readAllBytes(report.toPath()), StandardCharsets.UTF_8), FEATURES);
+                if (featureList == null)
+                    continue;
+                for (Map<String, Object> feature : featureList) {
+                    Object uri = feature.get("uri");
+                    features.putIfAbsent(uri, feature);
+                    elements.computeIfAbsent(uri, k -> new ArrayList<>()).addAll(elements(feature));
+                    features.get(uri).put("elements", elements.get(uri));
+                }
+            } catch (IOException | RuntimeException e) {
+                System.err.println("-->ParallelRunner: cannot read " + report + ": " + e.getMessage());
+            }
+        }
+        try {
+            Files.write(target.toPath(), new GsonBuilder().setPrettyPrinting().create()
+                    .toJson(features.values()).getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            System.err.println("-->ParallelRunner: cannot write " + target + ": " + e.getMessage());
+        }
+    }
+}
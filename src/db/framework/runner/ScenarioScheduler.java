@@ -0,0 +1,521 @@
+package db.framework.runner;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+import org.apache.commons.codec.digest.DigestUtils;
+import db.framework.utils.Utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Plans the order of scenarios from their durations in earlier runs.
+ * <p>
+ * Durations are kept per gherkin scenario id in "duration_history" (default scenario_durations.json in the
+ * workspace). They are recorded by the hooks for every scenario that ran, and read from logs/cucumber.json
+ * for the others, then averaged with the previous runs. A scenario that never ran is expected to take the
+ * median time per step of the known scenarios times its step count, or "scenario_default_ms" (default
+ * 60000) when nothing is known yet.
+ * </p>
+ * <p>
+ * Scenarios are run longest first, each free worker takes the next one; "@serial" scenarios run alone once
+ * the others are done. With "shard_count" and "shard_index" (from 0) set, every shard (e.g. build agent)
+ * runs its part of the scenarios, packed longest first on the least loaded shard. The shards only agree on
+ * the split when they pack from the same durations: the file given by "duration_history", which must then be
+ * the same for all shards (its checksum is printed), or else "scenario_default_ms" for every scenario. Each
+ * shard then runs its part longest first from its own history. The predicted and actual run times are
+ * written to logs/schedule.json.
+ * </p>
+ */
+public class ScenarioScheduler {
+    // weight of the latest run in the average
+    private static final double ALPHA = 0.3;
+    /**
+     * Scenarios (or features) with this tag run alone, after the others
+     */
+    public static final String TAG_SERIAL = "@serial";
+
+    private static final Map<String, Long> observed = new ConcurrentHashMap<>();
+    private static final Map<String, Integer> stepCounts = new ConcurrentHashMap<>();
+    private static Map<String, History> history;
+
+    /**
+     * Gets the number of shards from "shard_count"
+     *
+     * @return number of shards, 1 if not set
+     */
+    public static int getShardCount() {
+        return Math.max(1, Utils.parseInt(MainRunner.getExParams("shard_count"), 1));
+    }
+
+    /**
+     * Gets the shard of this run from "shard_index"
+     *
+     * @return shard index from 0
+     */
+    public static int getShardIndex() {
+        return Math.min(getShardCount() - 1, Math.max(0, Utils.parseInt(MainRunner.getExParams("shard_index"), 0)));
+    }
+
+    /**
+     * Records the duration of a scenario run
+     *
+     * @param id       gherkin scenario id, e.g. "feature-name;scenario-name"
+     * @param duration duration in milliseconds
+     */
+    public static void record(String id, long duration) {
+        if (id != null && duration >= 0)
+            observed.put(id, duration);
+    }
+
+    /**
+     * Plans the scenarios of this shard on the workers
+     *
+     * @param units   scenarios as "path:line"
+     * @param workers number of workers
+     * @return scenarios of this shard, longest first
+     */
+    public static Plan plan(List<String> units, int workers) {
+        List<Unit> all = describe(units);
+        loadHistory();
+        long defaultDuration = defaultDurationPerStep();
+        for (Unit unit : all)
+            unit.predicted = predict(unit, defaultDuration);
+        // stable sort, equal durations keep the feature order
+        all.sort((a, b) -> Long.compare(b.predicted, a.predicted));
+
+        int shards = getShardCount();
+        List<Unit> mine = all;
+        if (shards > 1) {
+            mine = shard(all, shards).get(getShardIndex());
+            System.out.println("-->ScenarioScheduler: shard " + (getShardIndex() + 1) + "/" + shards + " runs " +
+                    mine.size() + " of " + all.size() + " scenario(s)");
+        }
+        Plan plan = new Plan(mine, workers, makespan(mine, workers));
+        System.out.println("-->ScenarioScheduler: predicted run time " + Utils.toDuration(plan.predicted) +
+                " on " + workers + " worker(s)");
+        return plan;
+    }
+
+    /**
+     * Adds the durations of this run to the history, reading the cucumber report for scenarios not recorded
+     *
+     * @param report cucumber json report of the run, may not exist
+     */
+    public static synchronized void saveHistory(File report) {
+        Map<String, Long> durations = new HashMap<>(readReport(report));
+        durations.putAll(observed);
+        if (durations.isEmpty())
+            return;
+        loadHistory();
+        for (Map.Entry<String, Long> entry : durations.entrySet()) {
+            History h = history.get(entry.getKey());
+            if (h == null)
+                history.put(entry.getKey(), h = new History(entry.getValue()));
+            else
+                h.add(entry.getValue());
+            h.steps = stepCounts.getOrDefault(entry.getKey(), h.steps);
+        }
+        File file = getHistoryFile();
+        try {
+            Files.write(file.toPath(), new GsonBuilder().setPrettyPrinting().create()
+                    .toJson(new TreeMap<>(history)).getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            System.err.println("-->ScenarioScheduler: cannot write " + file + ": " + e.getMessage());
+        }
+    }
+
+    // splits the scenarios on the shards from what every shard knows the same way, each shard keeps the
+    // longest first order of its own history
+    private static List<List<Unit>> shard(List<Unit> units, int shards) {
+        String shared = MainRunner.getExParams("duration_history");
+        long defaultMs = Math.max(1, Utils.parseInt(MainRunner.getExParams("scenario_default_ms"), 60000));
+        if (shared != null) {
+            File file = new File(shared);
+            System.out.println("-->ScenarioScheduler: shards packed from " + file + " (sha1 " + checksum(file) +
+                    "), every shard must use the same file");
+        } else {
+            System.out.println("-->ScenarioScheduler: no shared duration_history, shards packed as " +
+                    Utils.toDuration(defaultMs) + " per scenario");
+        }
+        Map<Unit, Long> weights = new HashMap<>();
+        for (Unit unit : units)
+            weights.put(unit, shared != null ? unit.predicted : defaultMs);
+        List<Unit> sorted = new ArrayList<>(units);
+        // the same order on every shard: longest first, then by id and path
+        sorted.sort((a, b) -> {
+            int c = Long.compare(weights.get(b), weights.get(a));
+            if (c == 0)
+                c = a.id.compareTo(b.id);
+            return c != 0 ? c : relativePath(a.path).compareTo(relativePath(b.path));
+        });
+        List<List<Unit>> bins = pack(sorted, weights, shards);
+        for (List<Unit> bin : bins)
+            bin.sort((a, b) -> Long.compare(b.predicted, a.predicted));
+        return bins;
+    }
+
+    // longest first on the least loaded bin, the lowest index on equal loads
+    private static List<List<Unit>> pack(List<Unit> units, Map<Unit, Long> weights, int count) {
+        List<List<Unit>> bins = new ArrayList<>();
+        PriorityQueue<long[]> loads = new PriorityQueue<>((a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]));
+        for (int i = 0; i < count; i++) {
+            bins.add(new ArrayList<>());
+            loads.add(new long[]{0, i});
+        }
+        for (Unit unit : units) {
+            long[] load = loads.poll();
+            bins.get((int) load[1]).add(unit);
+            load[0] += weights.get(unit);
+            loads.add(load);
+        }
+        return bins;
+    }
+
+    private static String checksum(File file) {
+        try {
+            return file.exists() ? DigestUtils.sha1Hex(Files.readAllBytes(file.toPath())) : "none, no file";
+        } catch (IOException e) {
+            return "none, " + e.getMessage();
+        }
+    }
+
+    // workers take the next scenario when they are free, serial scenarios run one by one once they are done
+    private static long makespan(List<Unit> units, int workers) {
+        PriorityQueue<Long> loads = new PriorityQueue<>();
+        for (int i = 0; i < workers; i++)
+            loads.add(0L);
+        long max = 0;
+        long serial = 0;
+        for (Unit unit : units) {
+            if (unit.serial) {
+                serial += unit.predicted;
+                continue;
+            }
+            long end = loads.poll() + unit.predicted;
+            max = Math.max(max, end);
+            loads.add(end);
+        }
+        return max + serial;
+    }
+
+    private static long predict(Unit unit, long defaultPerStep) {
+        History h = history.get(unit.id);
+        if (h != null)
+            return h.avg_ms;
+        // an outline is known by its examples
+        long sum = 0;
+        boolean found = false;
+        for (Map.Entry<String, History> entry : history.entrySet()) {
+            if (entry.getKey().startsWith(unit.id + ";")) {
+                sum += entry.getValue().avg_ms;
+                found = true;
+            }
+        }
+        if (found)
+            return sum;
+        if (defaultPerStep < 0)
+            return Math.max(1, Utils.parseInt(MainRunner.getExParams("scenario_default_ms"), 60000));
+        return defaultPerStep * Math.max(1, unit.steps);
+    }
+
+    // median time per step of the scenarios with a history, -1 if none
+    private static long defaultDurationPerStep() {
+        List<Long> perStep = new ArrayList<>();
+        for (History h : history.values()) {
+            if (h.steps > 0)
+                perStep.add(h.avg_ms / h.steps);
+        }
+        if (perStep.isEmpty())
+            return -1;
+        Collections.sort(perStep);
+        return perStep.get(perStep.size() / 2);
+    }
+
+    // scenario id and step count of each "path:line"
+    private static List<Unit> describe(List<String> units) {
+        Map<String, Map<Integer, Unit>> features = new HashMap<>();
+        List<Unit> described = new ArrayList<>();
+        for (String unit : units) {
+            int index = unit.lastIndexOf(':');
+            String path = unit.substring(0, index);
+            int line = Utils.parseInt(unit.substring(index + 1), 0);
+            Unit scenario = features.computeIfAbsent(path, ScenarioScheduler::parse).get(line);
+            if (scenario == null)
+                scenario = new Unit(relativePath(unit), 0, false);
+            stepCounts.put(scenario.id, scenario.steps);
+            described.add(new Unit(unit, scenario));
+        }
+        return described;
+    }
+
+    // the scenarios of a feature by line
+    private static Map<Integer, Unit> parse(String path) {
+        Map<Integer, Unit> elements = new HashMap<>();
+        try {
+            List<Map<String, Object>> featureList = new Gson().fromJson(Utils.gherkinTojson(false, path),
+                    new TypeToken<List<Map<String, Object>>>() {
+                    }.getType());
+            for (Map<String, Object> feature : featureList) {
+                boolean serial = hasTag(feature, TAG_SERIAL);
+                for (Map<?, ?> element : maps(feature.get("elements")))
+                    elements.put(Utils.parseInt(element.get("line"), 0), new Unit(String.valueOf(element.get("id")),
+                            countSteps(element), serial || hasTag(element, TAG_SERIAL)));
+            }
+        } catch (RuntimeException | AssertionError e) {
+            System.err.println("-->ScenarioScheduler: cannot read " + path + ": " + e.getMessage());
+        }
+        return elements;
+    }
+
+    private static boolean hasTag(Map<?, ?> element, String tag) {
+        for (Map<?, ?> t : maps(element.get("tags"))) {
+            if (tag.equals(t.get("name")))
+                return true;
+        }
+        return false;
+    }
+
+    // an outline runs its steps once per example row
+    private static int countSteps(Map<?, ?> element) {
+        int steps = element.get("steps") instanceof List ? ((List<?>) element.get("steps")).size() : 0;
+        if (!(element.get("examples") instanceof List))
+            return steps;
+        int rows = 0;
+        for (Map<?, ?> examples : maps(element.get("examples"))) {
+            if (examples.get("rows") instanceof List)
+                rows += Math.max(0, ((List<?>) examples.get("rows")).size() - 1);
+        }
+        return steps * Math.max(1, rows);
+    }
+
+    // scenario durations of a cucumber json report, the sum of its step durations
+    private static Map<String, Long> readReport(File report) {
+        Map<String, Long> durations = new HashMap<>();
+        if (report == null || !report.exists())
+            return durations;
+        try {
+            Object json = new Gson().fromJson(new String(Files.readAllBytes(report.toPath()), StandardCharsets.UTF_8), Object.class);
+            // the formatter report keeps the features under "run"
+            if (json instanceof Map)
+                json = ((Map<?, ?>) json).get("run");
+            for (Map<?, ?> feature : maps(json)) {
+                for (Map<?, ?> element : maps(feature.get("elements"))) {
+                    if (!(element.get("steps") instanceof List))
+                        continue;
+                    String id = String.valueOf(element.get("id"));
+                    List<Map<?, ?>> steps = maps(element.get("steps"));
+                    stepCounts.putIfAbsent(id, steps.size());
+                    long nanos = 0;
+                    for (Map<?, ?> step : steps) {
+                        Object result = step.get("result");
+                        Object duration = result instanceof Map ? ((Map<?, ?>) result).get("duration") : null;
+                        if (duration instanceof Number)
+                            nanos += ((Number) duration).longValue();
+                    }
+                    durations.merge(id, nanos / 1000000, Long::sum);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("-->ScenarioScheduler: cannot read " + report + ": " + e.getMessage());
+        }
+        return durations;
+    }
+
+    // the json objects of a json array, empty if the value is not an array
+    private static List<Map<?, ?>> maps(Object value) {
+        List<Map<?, ?>> maps = new ArrayList<>();
+        if (value instanceof List) {
+            for (Object item : (List<?>) value) {
+                if (item instanceof Map)
+                    maps.add((Map<?, ?>) item);
+            }
+        }
+        return maps;
+    }
+
+    // the same on every build agent, whatever its workspace
+    private static String relativePath(String path) {
+        String workspace = MainRunner.workspace;
+        if (workspace != null && !workspace.isEmpty() && path.startsWith(workspace))
+            return path.substring(workspace.length()).replaceFirst("^[/\\\\]+", "");
+        return path;
+    }
+
+    private static synchronized void loadHistory() {
+        if (history != null)
+            return;
+        history = new HashMap<>();
+        File file = getHistoryFile();
+        if (!file.exists())
+            return;
+        try {
+            Map<String, History> loaded = new Gson().fromJson(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8),
+                    new TypeToken<Map<String, History>>() {
+                    }.getType());
+            if (loaded != null)
+                history.putAll(loaded);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("-->ScenarioScheduler: cannot read " + file + ": " + e.getMessage());
+        }
+    }
+
+    private static File getHistoryFile() {
+        String path = MainRunner.getExParams("duration_history");
+        if (path != null)
+            return new File(path);
+        return new File(MainRunner.workspace == null ? "." : MainRunner.workspace, "scenario_durations.json");
+    }
+
+    /**
+     * Averaged duration of one scenario
+     */
+    private static class History {
+        private long avg_ms;
+        private int runs;
+        private int steps;
+
+        History(long duration) {
+            avg_ms = duration;
+            runs = 1;
+        }
+
+        void add(long duration) {
+            avg_ms = Math.round(ALPHA * duration + (1 - ALPHA) * avg_ms);
+            runs++;
+        }
+    }
+
+    /**
+     * One scenario to run
+     */
+    public static class Unit {
+        private final String path;
+        private final String id;
+        private final int steps;
+        private final boolean serial;
+        private long predicted;
+
+        // a scenario of a feature file, not located yet
+        private Unit(String id, int steps, boolean serial) {
+            this(null, id, steps, serial);
+        }
+
+        private Unit(String path, Unit scenario) {
+            this(path, scenario.id, scenario.steps, scenario.serial);
+        }
+
+        private Unit(String path, String id, int steps, boolean serial) {
+            this.path = path;
+            this.id = id;
+            this.steps = steps;
+            this.serial = serial;
+        }
+
+        /**
+         * Gets the scenario to give to cucumber
+         *
+         * @return "path:line"
+         */
+        public String getPath() {
+            return path;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public long getPredicted() {
+            return predicted;
+        }
+
+        /**
+         * Checks if the scenario must not run at the same time as others, see {@link #TAG_SERIAL}
+         *
+         * @return true if the scenario or its feature has the tag
+         */
+        public boolean isSerial() {
+            return serial;
+        }
+    }
+
+    /**
+     * Scenarios of this run in the order to start them, with the predicted run time
+     */
+    public static class Plan {
+        private final List<Unit> units;
+        private final int workers;
+        private final long predicted;
+        private final Map<String, Long> actual = new ConcurrentHashMap<>();
+
+        Plan(List<Unit> units, int workers, long predicted) {
+            this.units = Collections.unmodifiableList(units);
+            this.workers = workers;
+            this.predicted = predicted;
+        }
+
+        public List<Unit> getUnits() {
+            return units;
+        }
+
+        public long getPredicted() {
+            return predicted;
+        }
+
+        /**
+         * Records the run time of a scenario of the plan for the report
+         *
+         * @param unit     scenario
+         * @param duration run time in milliseconds
+         */
+        public void done(Unit unit, long duration) {
+            // the history keeps the scenario time of the hooks, without the cucumber start up
+            actual.put(unit.path, duration);
+        }
+
+        /**
+         * Prints the predicted and actual run times and writes them to a json file
+         *
+         * @param makespan actual run time of all scenarios in milliseconds
+         * @param file     json file to write
+         */
+        public void report(long makespan, File file) {
+            System.out.println("-->ScenarioScheduler: predicted " + Utils.toDuration(predicted) + ", actual " +
+                    Utils.toDuration(makespan));
+            List<Map<String, Object>> list = new ArrayList<>();
+            for (Unit unit : units) {
+                Map<String, Object> map = new LinkedHashMap<>();
+                map.put("unit", unit.path);
+                map.put("id", unit.id);
+                map.put("predicted_ms", unit.predicted);
+                map.put("actual_ms", actual.get(unit.path));
+                list.add(map);
+            }
+            Map<String, Object> schedule = new LinkedHashMap<>();
+            schedule.put("workers", workers);
+            schedule.put("shard_index", getShardIndex());
+            schedule.put("shard_count", getShardCount());
+            schedule.put("predicted_makespan_ms", predicted);
+            schedule.put("actual_makespan_ms", makespan);
+            schedule.put("scenarios", list);
+            try {
+                Files.write(file.toPath(), new GsonBuilder().setPrettyPrinting().create()
+                        .toJson(schedule).getBytes(StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                System.err.println("-->ScenarioScheduler: cannot write " + file + ": " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package db.framework.utils;
+
+import db.framework.runner.MainRunner;
+import org.openqa.selenium.By;
+import org.openqa.selenium.support.ui.ExpectedConditions;
+import org.openqa.selenium.support.ui.WebDriverWait;
+
+/**
+ * What a click waits for before it returns, see {@link StepUtils#click(org.openqa.selenium.WebElement, ClickCondition)}.
+ * <ul>
+ * <li>{@link #NONE} - return right after the click</li>
+ * <li>{@link #navigation()} - a new page was loaded and is ready</li>
+ * <li>{@link #domChange()} - the page changed in any way</li>
+ * <li>{@link #elementAppears(By)} / {@link #elementDisappears(By)} - an element is displayed / gone</li>
+ * <li>{@link #networkIdle()} - requests ended and the page is quiet (what clicks used to wait for)</li>
+ * </ul>
+ */
+public class ClickCondition {
+    public enum Type {
+        NONE, NAVIGATION, DOM_CHANGE, ELEMENT_APPEARS, ELEMENT_DISAPPEARS, NETWORK_IDLE
+    }
+
+    public static final ClickCondition NONE = new ClickCondition(Type.NONE, null);
+
+    private static final long POLL = 100L;
+    // marks the page before the click, a new document does not have the marker. The observer of the previous
+    // click on the same document is disconnected first.
+    private static final String MARK_SCRIPT = "var old=window.__dbClick;if(old&&old.observer)old.observer.disconnect();" +
+            "var m={id:arguments[0],changes:0};window.__dbClick=m;" +
+            "if(window.MutationObserver){m.observer=new MutationObserver(function(){m.changes++;});" +
+            "m.observer.observe(document.documentElement,{childList:true,subtree:true,attributes:true,characterData:true});}";
+    private static final String CHANGED_SCRIPT = "var m=window.__dbClick;" +
+            "return !m||m.id!==arguments[0] ? 'navigated' : (m.changes>0 ? 'changed' : 'same');";
+
+    private final Type type;
+    private final By selector;
+
+    private ClickCondition(Type type, By selector) {
+        this.type = type;
+        this.selector = selector;
+    }
+
+    public static ClickCondition navigation() {
+        return new ClickCondition(Type.NAVIGATION, null);
+    }
+
+    public static ClickCondition domChange() {
+        return new ClickCondition(Type.DOM_CHANGE, null);
+    }
+
+    public static ClickCondition elementAppears(By selector) {
+        return new ClickCondition(Type.ELEMENT_APPEARS, selector);
+    }
+
+    public static ClickCondition elementDisappears(By selector) {
+        return new ClickCondition(Type.ELEMENT_DISAPPEARS, selector);
+    }
+
+    public static ClickCondition networkIdle() {
+        return new ClickCondition(Type.NETWORK_IDLE, null);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Runs before the click, marks the page for the conditions that watch it
+     *
+     * @return mark to give to {@link #await}
+     */
+    String prepare() {
+        if (type != Type.NAVIGATION && type != Type.DOM_CHANGE)
+            return null;
+        String token = Long.toString(System.nanoTime());
+        StepUtils.execJavascript(MARK_SCRIPT, token);
+        return token;
+    }
+
+    /**
+     * Waits until the condition is met
+     *
+     * @param token   mark returned by {@link #prepare()}
+     * @param timeout maximum wait in seconds
+     * @return true if the condition was met
+     */
+    boolean await(String token, int timeout) {
+        try {
+            switch (type) {
+                case NONE:
+                    return true;
+                case NETWORK_IDLE:
+                    return StepUtils.waitForPageReady(null);
+                case ELEMENT_APPEARS:
+                    new WebDriverWait(MainRunner.getWebDriver(), timeout, POLL)
+                            .until(ExpectedConditions.visibilityOfElementLocated(selector));
+                    return true;
+                case ELEMENT_DISAPPEARS:
+                    new WebDriverWait(MainRunner.getWebDriver(), timeout, POLL)
+                            .until(ExpectedConditions.invisibilityOfElementLocated(selector));
+                    return true;
+                default:
+                    return awaitChange(token, timeout);
+            }
+        } catch (Exception ex) {
+            System.err.println("-->ClickCondition: " + this + " not met after " + timeout + " s: " + ex.getMessage());
+            return false;
+        }
+    }
+
+    private boolean awaitChange(String token, int timeout) {
+        long end = System.currentTimeMillis() + timeout * 1000L;
+        while (System.currentTimeMillis() < end) {
+            // "" while the old page unloads or the new one is not scriptable yet
+            Object state = StepUtils.execJavascript(CHANGED_SCRIPT, token);
+            if ("navigated".equals(state) || (type == Type.DOM_CHANGE && "changed".equals(state))) {
+                if (type == Type.NAVIGATION)
+                    StepUtils.waitForPageReady(null);
+                return true;
+            }
+            Utils.threadSleep(POLL, null);
+        }
+        System.err.println("-->ClickCondition: " + this + " not met after " + timeout + " s");
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return selector == null ? type.toString() : type + " " + selector;
+    }
+}
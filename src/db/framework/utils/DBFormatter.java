@@ -1,28 +1,53 @@
 package db.framework.utils;
 
 import db.framework.runner.MainRunner;
+import gherkin.deps.com.google.gson.Gson;
 import gherkin.deps.com.google.gson.GsonBuilder;
-import gherkin.deps.net.iharder.Base64;
 import gherkin.formatter.Formatter;
 import gherkin.formatter.NiceAppendable;
 import gherkin.formatter.Reporter;
 import gherkin.formatter.model.*;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Cucumber formatter writing logs/cucumber.json.
+ * <p>
+ * Only the current feature header and its unfinished elements are kept in memory. Every feature header and
+ * every finished scenario (or background) is appended as one line to logs/cucumber.ndjson, prefixed with
+ * "F" or "E" and a tab, and flushed right away so an aborted run keeps its results. Embeddings are written
+ * to logs/embeddings/ and referenced by file name. cucumber.json is assembled from the ndjson lines in
+ * {@link #done()}, see {@link #assemble(File, File, Map)}.
+ * </p>
+ */
+public class DBFormatter implements Reporter, Formatter {
+    private static final String FEATURE_LINE = "F";
+    private static final String ELEMENT_LINE = "E";
+    private static final AtomicInteger embeddingCount = new AtomicInteger();
 
+    private static final Gson LINE_GSON = new GsonBuilder().create();
 
-public class DBFormatter implements Reporter, Formatter {
-    private final List<Map<String, Object>> featureMaps = new ArrayList<Map<String, Object>>();
     private final NiceAppendable out;
 
     private Map<String, Object> featureMap;
     private String uri;
     private List<Map> beforeHooks = new ArrayList<Map>();
     private File m_fcucumberJson = new File(MainRunner.logs + "cucumber.json");
+    private File m_fcucumberLines = new File(MainRunner.logs + "cucumber.ndjson");
+    private Writer lines;
+    private final List<Future<File>> screenShots = new ArrayList<Future<File>>();
 
     public DBFormatter(Appendable out) {
         this.out = new NiceAppendable(out);
@@ -48,9 +73,10 @@ public class DBFormatter implements Reporter, Formatter {
 
     @Override
     public void feature(Feature feature) {
+        flushElements();
         featureMap = feature.toMap();
         featureMap.put("uri", uri);
-        featureMaps.add(featureMap);
+        writeLine(FEATURE_LINE, featureMap);
     }
 
     @Override
@@ -89,9 +115,12 @@ public class DBFormatter implements Reporter, Formatter {
 
     @Override
     public void embedding(String mimeType, byte[] data) {
+        String fileName = "embeddings/" + Utils.getScenarioShaKey(uri, ":" + embeddingCount.incrementAndGet(), false) +
+                "." + extension(mimeType);
+        Utils.writeSmallBinaryFile(data, new File(MainRunner.logs + fileName));
         final Map<String, String> embedding = new HashMap<String, String>();
         embedding.put("mime_type", mimeType);
-        embedding.put("data", Base64.encodeBytes(data));
+        embedding.put("file", fileName);
         getEmbeddings().add(embedding);
     }
 
@@ -106,8 +135,9 @@ public class DBFormatter implements Reporter, Formatter {
             System.err.println(" --> " + result.getStatus().toUpperCase());
         HashMap map = new HashMap(result.toMap());
         if (!result.getStatus().equals("passed")) {
-            String screenShot = Utils.getScenarioShaKey(this.uri, ":" + this.getSteps().size()) + ".png";
-            StepUtils.browserScreenCapture(screenShot);
+            String screenShot = Utils.getScenarioShaKey(this.uri, ":" + this.getSteps().size(), false) + ".png";
+            // written in the background, awaited in done()
+            screenShots.add(ScreenshotPipeline.capture(screenShot));
             map.put("screen_shot", screenShot);
         }
         getCurrentStep(Phase.result).put("result", map);
@@ -147,24 +177,87 @@ public class DBFormatter implements Reporter, Formatter {
 
     @Override
     public void eof() {
+        flushElements();
     }
 
     @Override
     public void done() {
-        HashMap job = new HashMap();
-        job.put("run", featureMaps);
+        flushElements();
+        ScreenshotPipeline.await(screenShots, Utils.parseInt(MainRunner.getExParams("screenshot_await_timeout"), 60) * 1000L);
+        screenShots.clear();
+        closeLines();
+        Map<String, Object> job = new HashMap<String, Object>();
         job.put("environment_variables", System.getenv());
         job.put("start_time", MainRunner.startTime);
         job.put("end_time", System.currentTimeMillis());
-        String json = gson().toJson(job);
-        Utils.writeSmallBinaryFile(json.getBytes(), m_fcucumberJson);
+        try {
+            assemble(m_fcucumberLines, m_fcucumberJson, job);
+        } catch (IOException e) {
+            System.err.println("-->DBFormatter: cannot write " + m_fcucumberJson + ", results are in " + m_fcucumberLines + ": " + e.getMessage());
+        }
     }
 
     @Override
     public void close() {
+        closeLines();
         out.close();
     }
 
+    /**
+     * Builds the cucumber.json report from the lines written by the formatter, one line at a time. Can be
+     * used to recover the report of an aborted run.
+     *
+     * @param linesFile  ndjson lines written by the formatter
+     * @param jsonFile   report to write
+     * @param attributes top level attributes written after "run", e.g. start_time
+     * @throws IOException read or write errors
+     */
+    public static void assemble(File linesFile, File jsonFile, Map<String, Object> attributes) throws IOException {
+        try (BufferedReader in = Files.newBufferedReader(linesFile.toPath(), StandardCharsets.UTF_8);
+             BufferedWriter json = Files.newBufferedWriter(jsonFile.toPath(), StandardCharsets.UTF_8)) {
+            json.write("{\"run\":[");
+            boolean firstFeature = true;
+            boolean firstElement = true;
+            boolean inFeature = false;
+            String line;
+            while ((line = in.readLine()) != null) {
+                int tab = line.indexOf('\t');
+                if (tab < 0)
+                    continue;
+                String type = line.substring(0, tab);
+                String value = line.substring(tab + 1);
+                if (FEATURE_LINE.equals(type)) {
+                    if (inFeature)
+                        json.write("]}");
+                    if (!firstFeature)
+                        json.write(",");
+                    // reopen the feature object to append its elements
+                    String header = value.substring(0, value.lastIndexOf('}'));
+                    json.write(header);
+                    json.write(header.trim().equals("{") ? "\"elements\":[" : ",\"elements\":[");
+                    firstFeature = false;
+                    firstElement = true;
+                    inFeature = true;
+                } else if (ELEMENT_LINE.equals(type) && inFeature) {
+                    if (!firstElement)
+                        json.write(",");
+                    json.write(value);
+                    firstElement = false;
+                }
+            }
+            if (inFeature)
+                json.write("]}");
+            json.write("]");
+            for (Map.Entry<String, Object> attribute : attributes.entrySet()) {
+                json.write(",");
+                json.write(LINE_GSON.toJson(attribute.getKey()));
+                json.write(":");
+                json.write(LINE_GSON.toJson(attribute.getValue()));
+            }
+            json.write("}");
+        }
+    }
+
     @Override
     public void syntaxError(String state, String event, List<String> legalEvents, String uri, Integer line) {
         throw new UnsupportedOperationException();
@@ -177,7 +270,59 @@ public class DBFormatter implements Reporter, Formatter {
 
     @Override
     public void endOfScenarioLifeCycle(Scenario scenario) {
-        // NoOp
+        flushElements();
+    }
+
+    // writes the finished elements of the current feature and drops them from memory
+    private void flushElements() {
+        if (featureMap == null || featureMap.get("elements") == null)
+            return;
+        List<Map<String, Object>> elements = getFeatureElements();
+        for (Map<String, Object> element : elements)
+            writeLine(ELEMENT_LINE, element);
+        elements.clear();
+    }
+
+    private void writeLine(String type, Map<String, Object> value) {
+        try {
+            if (lines == null)
+                lines = Files.newBufferedWriter(m_fcucumberLines.toPath(), StandardCharsets.UTF_8);
+            lines.write(type);
+            lines.write('\t');
+            lines.write(LINE_GSON.toJson(value));
+            lines.write('\n');
+            lines.flush();
+        } catch (IOException e) {
+            System.err.println("-->DBFormatter: cannot write " + m_fcucumberLines + ": " + e.getMessage());
+        }
+    }
+
+    private void closeLines() {
+        if (lines == null)
+            return;
+        try {
+            lines.close();
+        } catch (IOException e) {
+            // nothing left to write
+        }
+        lines = null;
+    }
+
+    private static String extension(String mimeType) {
+        switch (mimeType) {
+            case "image/png":
+                return "png";
+            case "image/jpeg":
+                return "jpg";
+            case "text/plain":
+                return "txt";
+            case "text/html":
+                return "html";
+            case "application/json":
+                return "json";
+            default:
+                return "bin";
+        }
     }
 
     private List<Map<String, Object>> getFeatureElements() {
@@ -233,9 +378,5 @@ public class DBFormatter implements Reporter, Formatter {
         return output;
     }
 
-    protected gherkin.deps.com.google.gson.Gson gson() {
-        return new GsonBuilder().setPrettyPrinting().create();
-    }
-
     private enum Phase {step, match, embedding, output, result}
 }
\ No newline at end of file
@@ -0,0 +1,347 @@
+package db.framework.utils;
+
+import db.framework.runner.MainRunner;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Assert;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Index of all page and panel elements, built once from the resources/elements json files.
+ * <p>
+ * The project elements directory (if a project is set) and db/shared are walked once and their files are
+ * parsed in parallel. Every page is flattened with its included panels ("panel.header" is
+ * panels/header.json) into one immutable map, page entries winning over panel entries. Duplicate file
+ * names and missing includes fail the run when the index is built instead of at lookup time.
+ * </p>
+ * <p>
+ * If "element_index_cache" is set to a file path, the index is written there in a binary format and read
+ * back on later runs. The cache is checked against the size and modification time of the json files unless
+ * "element_index_cache_verify" is false, in which case the element directories are not read at all.
+ * </p>
+ */
+public class ElementIndex {
+    private static final int CACHE_MAGIC = 0x45494458; // EIDX
+    private static final int CACHE_VERSION = 1;
+    private static final String PAGES = "pages";
+    private static final String PANELS = "panels";
+
+    private static volatile ElementIndex index;
+
+    // layer ("project", "shared") -> kind ("pages", "panels") -> name -> element -> value
+    private final Map<String, Map<String, Map<String, Map<String, String>>>> layers;
+
+    private ElementIndex(Map<String, Map<String, Map<String, Map<String, String>>>> layers) {
+        this.layers = layers;
+    }
+
+    /**
+     * Gets the index, building it on first use
+     *
+     * @return element index
+     */
+    public static ElementIndex get() {
+        ElementIndex current = index;
+        if (current != null)
+            return current;
+        synchronized (ElementIndex.class) {
+            if (index == null)
+                index = load();
+            return index;
+        }
+    }
+
+    /**
+     * Finds the value of an element. Project pages are searched before shared pages, then panels of the
+     * same name.
+     *
+     * @param pageName    page name, e.g. "home"
+     * @param elementName element name, e.g. "add_users_btn"
+     * @return element value or null if not found
+     */
+    public String find(String pageName, String elementName) {
+        String value = find(PAGES, pageName, elementName);
+        return value != null ? value : find(PANELS, pageName, elementName);
+    }
+
+    /**
+     * Gets the flattened elements of a page or panel
+     *
+     * @param kind  "pages" or "panels"
+     * @param layer "project" or "shared"
+     * @return elements by page name
+     */
+    public Map<String, Map<String, String>> getPages(String kind, String layer) {
+        Map<String, Map<String, Map<String, String>>> kinds = layers.get(layer);
+        if (kinds == null || kinds.get(kind) == null)
+            return Collections.emptyMap();
+        return kinds.get(kind);
+    }
+
+    private String find(String kind, String pageName, String elementName) {
+        for (Map<String, Map<String, Map<String, String>>> kinds : layers.values()) {
+            Map<String, String> page = kinds.get(kind).get(pageName);
+            if (page != null && page.containsKey(elementName))
+                return page.get(elementName);
+        }
+        return null;
+    }
+
+    private static ElementIndex load() {
+        long ts = System.currentTimeMillis();
+        Map<String, File> roots = getRoots();
+        String cachePath = MainRunner.getExParams("element_index_cache");
+        File cacheFile = cachePath == null ? null : new File(cachePath);
+        boolean verify = !"false".equalsIgnoreCase(MainRunner.getExParams("element_index_cache_verify"));
+
+        Map<String, List<Path>> files = null;
+        long fingerprint = 0;
+        if (cacheFile == null || verify) {
+            files = walk(roots);
+            fingerprint = fingerprint(files);
+        }
+
+        if (cacheFile != null && cacheFile.isFile()) {
+            ElementIndex cached = readCache(cacheFile, verify, fingerprint);
+            if (cached != null) {
+                System.out.println("-->ElementIndex: loaded " + cacheFile.getName() + " in " + (System.currentTimeMillis() - ts) + " ms");
+                return cached;
+            }
+        }
+
+        if (files == null) {
+            files = walk(roots);
+            fingerprint = fingerprint(files);
+        }
+        ElementIndex built = build(roots, files);
+        System.out.println("-->ElementIndex: indexed " + files.values().stream().mapToInt(List::size).sum() +
+                " file(s) in " + (System.currentTimeMillis() - ts) + " ms");
+        if (cacheFile != null)
+            built.writeCache(cacheFile, fingerprint);
+        return built;
+    }
+
+    // element directories by layer, project first
+    private static Map<String, File> getRoots() {
+        String resRepoPath = "src/";
+        if (!new File(resRepoPath).exists())
+            resRepoPath = "./";
+        Map<String, File> roots = new LinkedHashMap<>();
+        if (MainRunner.project != null)
+            roots.put("project", new File(resRepoPath + MainRunner.project.replace(".", "/") + "/resources/elements"));
+        roots.put("shared", new File(resRepoPath + "db/shared/resources/elements"));
+        return roots;
+    }
+
+    private static Map<String, List<Path>> walk(Map<String, File> roots) {
+        Map<String, List<Path>> files = new LinkedHashMap<>();
+        for (Map.Entry<String, File> root : roots.entrySet()) {
+            List<Path> jsonFiles = new ArrayList<>();
+            if (root.getValue().isDirectory()) {
+                try (Stream<Path> paths = Files.walk(root.getValue().toPath())) {
+                    jsonFiles = paths.filter(p -> p.toString().endsWith(".json") && Files.isRegularFile(p))
+                            .sorted()
+                            .collect(Collectors.toList());
+                } catch (IOException e) {
+                    Assert.fail("Resource Error: cannot read '" + root.getValue().getAbsolutePath() + "': " + e.getMessage());
+                }
+            }
+            files.put(root.getKey(), jsonFiles);
+        }
+        return files;
+    }
+
+    private static long fingerprint(Map<String, List<Path>> files) {
+        long hash = 17;
+        for (Map.Entry<String, List<Path>> layer : files.entrySet()) {
+            hash = 31 * hash + layer.getKey().hashCode();
+            for (Path path : layer.getValue()) {
+                File f = path.toFile();
+                hash = 31 * hash + path.toString().hashCode();
+                hash = 31 * hash + f.length();
+                hash = 31 * hash + f.lastModified();
+            }
+        }
+        return hash;
+    }
+
+    private static ElementIndex build(Map<String, File> roots, Map<String, List<Path>> files) {
+        List<String> errors = Collections.synchronizedList(new ArrayList<>());
+        Map<String, Map<String, Map<String, Map<String, String>>>> layers = new LinkedHashMap<>();
+
+        for (Map.Entry<String, List<Path>> layer : files.entrySet()) {
+            // kind -> name -> raw json, parsed in parallel
+            Map<String, Map<String, JSONObject>> raw = new HashMap<>();
+            raw.put(PAGES, new ConcurrentHashMap<>());
+            raw.put(PANELS, new ConcurrentHashMap<>());
+            Map<String, Path> seen = new ConcurrentHashMap<>();
+            Path root = roots.get(layer.getKey()).toPath();
+
+            layer.getValue().parallelStream().forEach(path -> {
+                Path relative = root.relativize(path);
+                String kind = relative.getNameCount() > 1 ? relative.getName(0).toString() : "";
+                if (!raw.containsKey(kind))
+                    return;
+                String fileName = path.getFileName().toString();
+                String name = fileName.substring(0, fileName.length() - ".json".length());
+                Path other = seen.putIfAbsent(kind + "/" + name, path);
+                if (other != null) {
+                    errors.add("Multiple '" + fileName + "' files found under '" + root.resolve(kind) + "': " + other + ", " + path);
+                    return;
+                }
+                try {
+                    raw.get(kind).put(name, new JSONObject(Utils.readTextFile(path.toFile())));
+                } catch (IOException | JSONException e) {
+                    errors.add("Cannot parse '" + path + "': " + e.getMessage());
+                }
+            });
+
+            Map<String, Map<String, Map<String, String>>> kinds = new HashMap<>();
+            for (String kind : new String[]{PAGES, PANELS}) {
+                Map<String, Map<String, String>> flattened = new HashMap<>();
+                for (String name : raw.get(kind).keySet())
+                    flattened.put(name, Collections.unmodifiableMap(flatten(layer.getKey(), kind, name, raw, new LinkedHashSet<>(), errors)));
+                kinds.put(kind, Collections.unmodifiableMap(flattened));
+            }
+            layers.put(layer.getKey(), Collections.unmodifiableMap(kinds));
+        }
+
+        if (!errors.isEmpty()) {
+            for (String error : errors)
+                System.err.println("-->ElementIndex: " + error);
+            Assert.fail("Resource Error: " + errors.size() + " problem(s) in resources/elements, first: " + errors.get(0));
+        }
+        return new ElementIndex(Collections.unmodifiableMap(layers));
+    }
+
+    // page entries first, then included panels in order
+    private static Map<String, String> flatten(String layer, String kind, String name, Map<String, Map<String, JSONObject>> raw,
+                                               Set<String> visiting, List<String> errors) {
+        Map<String, String> elements = new HashMap<>();
+        JSONObject json = raw.get(kind).get(name);
+        if (!visiting.add(kind + "/" + name)) {
+            errors.add("Include cycle in " + layer + " elements: " + visiting + " -> " + kind + "/" + name);
+            return elements;
+        }
+        String[] keys = JSONObject.getNames(json);
+        if (keys != null) {
+            for (String key : keys) {
+                Object value = json.get(key);
+                if (value instanceof String)
+                    elements.put(key, (String) value);
+            }
+        }
+
+        JSONArray includes = json.optJSONArray("include");
+        for (int i = 0; includes != null && i < includes.length(); i++) {
+            String include = includes.optString(i);
+            if (!include.startsWith("panel.")) {
+                errors.add(kind + "/" + name + ".json includes '" + include + "', expected 'panel.<name>'");
+                continue;
+            }
+            String panel = include.substring("panel.".length());
+            if (!raw.get(PANELS).containsKey(panel)) {
+                errors.add(kind + "/" + name + ".json includes missing panel '" + panel + "' (" + layer + " panels/" + panel + ".json)");
+                continue;
+            }
+            flatten(layer, PANELS, panel, raw, visiting, errors).forEach(elements::putIfAbsent);
+        }
+        visiting.remove(kind + "/" + name);
+        return elements;
+    }
+
+    private static ElementIndex readCache(File cacheFile, boolean verify, long fingerprint) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)))) {
+            if (in.readInt() != CACHE_MAGIC || in.readInt() != CACHE_VERSION)
+                return null;
+            long cachedFingerprint = in.readLong();
+            if (verify && cachedFingerprint != fingerprint)
+                return null;
+
+            Map<String, Map<String, Map<String, Map<String, String>>>> layers = new LinkedHashMap<>();
+            int layerCount = in.readInt();
+            for (int l = 0; l < layerCount; l++) {
+                String layer = in.readUTF();
+                Map<String, Map<String, Map<String, String>>> kinds = new HashMap<>();
+                int kindCount = in.readInt();
+                for (int k = 0; k < kindCount; k++) {
+                    String kind = in.readUTF();
+                    Map<String, Map<String, String>> pages = new HashMap<>();
+                    int pageCount = in.readInt();
+                    for (int p = 0; p < pageCount; p++) {
+                        String page = in.readUTF();
+                        Map<String, String> elements = new HashMap<>();
+                        int elementCount = in.readInt();
+                        for (int e = 0; e < elementCount; e++)
+                            elements.put(in.readUTF(), in.readUTF());
+                        pages.put(page, Collections.unmodifiableMap(elements));
+                    }
+                    kinds.put(kind, Collections.unmodifiableMap(pages));
+                }
+                layers.put(layer, Collections.unmodifiableMap(kinds));
+            }
+            return new ElementIndex(Collections.unmodifiableMap(layers));
+        } catch (IOException e) {
+            System.err.println("-->ElementIndex: ignoring unreadable cache " + cacheFile + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeCache(File cacheFile, long fingerprint) {
+        File tmp = new File(cacheFile.getPath() + ".tmp");
+        try {
+            File dir = cacheFile.getAbsoluteFile().getParentFile();
+            if (dir != null)
+                dir.mkdirs();
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                out.writeInt(CACHE_MAGIC);
+                out.writeInt(CACHE_VERSION);
+                out.writeLong(fingerprint);
+                out.writeInt(layers.size());
+                for (Map.Entry<String, Map<String, Map<String, Map<String, String>>>> layer : layers.entrySet()) {
+                    out.writeUTF(layer.getKey());
+                    out.writeInt(layer.getValue().size());
+                    for (Map.Entry<String, Map<String, Map<String, String>>> kind : layer.getValue().entrySet()) {
+                        out.writeUTF(kind.getKey());
+                        out.writeInt(kind.getValue().size());
+                        for (Map.Entry<String, Map<String, String>> page : kind.getValue().entrySet()) {
+                            out.writeUTF(page.getKey());
+                            out.writeInt(page.getValue().size());
+                            for (Map.Entry<String, String> element : page.getValue().entrySet()) {
+                                out.writeUTF(element.getKey());
+                                out.writeUTF(element.getValue());
+                            }
+                        }
+                    }
+                }
+            }
+            Files.move(tmp.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            System.err.println("-->ElementIndex: cannot write cache " + cacheFile + ": " + e.getMessage());
+            tmp.delete();
+        }
+    }
+}
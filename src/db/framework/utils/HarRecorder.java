@@ -0,0 +1,323 @@
+package db.framework.utils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.gson.GsonBuilder;
+import db.framework.runner.MainRunner;
+import db.framework.runner.ParallelRunner;
+import net.lightbody.bmp.BrowserMobProxy;
+import net.lightbody.bmp.core.har.Har;
+import net.lightbody.bmp.core.har.HarEntry;
+import net.lightbody.bmp.core.har.HarPostData;
+import net.lightbody.bmp.core.har.HarResponse;
+import net.lightbody.bmp.core.har.HarTimings;
+import net.lightbody.bmp.proxy.CaptureType;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Records the proxy traffic of each scenario to logs/har/.
+ * <p>
+ * A new HAR is started for every scenario and its finished entries are moved out of the proxy every second
+ * into "scenario-timestamp.har.ndjson.gz", one json entry per line, so the HAR held by the proxy stays small.
+ * When the scenario ends the remaining entries are written and a per-page summary (requests, transfer size,
+ * time to first byte, load time) is printed and saved next to it as ".summary.json".
+ * </p>
+ * There is one recording on the proxy shared by all browsers, so nothing is recorded when scenarios run on
+ * more than one parallel worker: their traffic could not be told apart.
+ * Parameters (ex_params or environment):
+ * <ul>
+ * <li>har_capture - set to false to not record traffic (default true)</li>
+ * <li>har_capture_content - also record request and response bodies (default false)</li>
+ * <li>har_max_body_kb - bodies are cut to this size, 0 for no limit (default 64)</li>
+ * <li>har_gzip - compress the entry file (default true)</li>
+ * </ul>
+ */
+public class HarRecorder {
+    private static final long DRAIN_INTERVAL = 1000L;
+    // entries may still get timings after their response is set
+    private static final long SETTLE_TIME = 1000L;
+    private static final long STALE_TIME = 60 * 1000L;
+
+    private static final boolean enabled = !"false".equals(MainRunner.getExParams("har_capture")) &&
+            ParallelRunner.getWorkerCount() <= 1;
+    private static final boolean captureContent = "true".equals(MainRunner.getExParams("har_capture_content"));
+    private static final int maxBodyChars = Math.max(0, Utils.parseInt(MainRunner.getExParams("har_max_body_kb"), 64)) * 1024;
+    private static final boolean gzip = !"false".equals(MainRunner.getExParams("har_gzip"));
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private static ScheduledExecutorService drainer;
+    private static Recording recording;
+
+    /**
+     * Sets up the capture of a new proxy, call before the first scenario
+     *
+     * @param proxy proxy server
+     */
+    public static void configure(BrowserMobProxy proxy) {
+        if (!enabled) {
+            if (ParallelRunner.getWorkerCount() > 1)
+                System.out.println("-->HarRecorder: no HAR capture with " + ParallelRunner.getWorkerCount() + " parallel workers");
+            return;
+        }
+        if (captureContent)
+            proxy.enableHarCaptureTypes(CaptureType.REQUEST_CONTENT, CaptureType.RESPONSE_CONTENT);
+    }
+
+    /**
+     * Starts recording a scenario, ending the previous recording if any
+     *
+     * @param scenario scenario name
+     */
+    public static synchronized void start(String scenario) {
+        BrowserMobProxy proxy = MainRunner.browsermobServer;
+        if (!enabled || proxy == null)
+            return;
+        stop();
+        String name = scenario.replaceAll("[^A-Za-z0-9_.-]+", "_");
+        if (name.length() > 80)
+            name = name.substring(0, 80);
+        File dir = Utils.createDirectory(MainRunner.logs + "har", false);
+        File file = new File(dir, name + "-" + System.currentTimeMillis() + ".har.ndjson" + (gzip ? ".gz" : ""));
+        try {
+            OutputStream out = new FileOutputStream(file);
+            if (gzip)
+                out = new GZIPOutputStream(out, 64 * 1024);
+            recording = new Recording(scenario, file, new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)));
+        } catch (IOException e) {
+            System.err.println("-->HarRecorder: cannot create " + file + ": " + e.getMessage());
+            return;
+        }
+        proxy.newHar(scenario);
+        if (drainer == null) {
+            drainer = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread th = new Thread(r, "HarRecorder-drainer");
+                th.setDaemon(true);
+                return th;
+            });
+        }
+        recording.task = drainer.scheduleWithFixedDelay(() -> {
+            // an exception would cancel the schedule
+            try {
+                drain(false);
+            } catch (Throwable e) {
+                System.err.println("-->HarRecorder: cannot record entries: " + e);
+            }
+        }, DRAIN_INTERVAL, DRAIN_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Starts a new page in the recording, e.g. when visiting a url
+     *
+     * @param page page name
+     */
+    public static synchronized void page(String page) {
+        if (recording != null && MainRunner.browsermobServer != null)
+            MainRunner.browsermobServer.newPage(page);
+    }
+
+    /**
+     * Ends the recording of the current scenario, writing its remaining entries and page summary
+     */
+    public static synchronized void stop() {
+        if (recording == null)
+            return;
+        recording.task.cancel(false);
+        try {
+            drain(true);
+        } catch (RuntimeException e) {
+            System.err.println("-->HarRecorder: cannot record entries: " + e);
+        }
+        if (MainRunner.browsermobServer != null)
+            MainRunner.browsermobServer.endHar();
+        try {
+            recording.out.close();
+        } catch (IOException e) {
+            System.err.println("-->HarRecorder: cannot close " + recording.file + ": " + e.getMessage());
+        }
+        writeSummary(recording);
+        recording = null;
+    }
+
+    // moves finished entries (or all entries) from the proxy HAR to the recording file
+    private static synchronized void drain(boolean all) {
+        if (recording == null || MainRunner.browsermobServer == null)
+            return;
+        Har har = MainRunner.browsermobServer.getHar();
+        if (har == null)
+            return;
+        List<HarEntry> entries = har.getLog().getEntries();
+        // the proxy adds entries from its own threads, only a copy on write list can be copied and cut safely
+        boolean removable = entries instanceof CopyOnWriteArrayList;
+        List<HarEntry> snapshot;
+        try {
+            snapshot = new ArrayList<>(entries);
+        } catch (ConcurrentModificationException e) {
+            // try again on the next drain
+            if (!all)
+                return;
+            snapshot = new ArrayList<>(entries);
+        }
+        long now = System.currentTimeMillis();
+        List<HarEntry> done = new ArrayList<>();
+        for (HarEntry entry : snapshot) {
+            if ((all || isFinished(entry, now)) && (removable || recording.written.add(entry)))
+                done.add(entry);
+        }
+        try {
+            for (HarEntry entry : done) {
+                limitBodies(entry);
+                recording.out.write(mapper.writeValueAsString(entry));
+                recording.out.write('\n');
+                recording.add(entry);
+            }
+            recording.out.flush();
+        } catch (IOException e) {
+            System.err.println("-->HarRecorder: cannot write " + recording.file + ": " + e.getMessage());
+        }
+        if (removable)
+            entries.removeAll(done);
+    }
+
+    private static boolean isFinished(HarEntry entry, long now) {
+        if (entry.getStartedDateTime() == null)
+            return false;
+        long started = entry.getStartedDateTime().getTime();
+        if (now - started > STALE_TIME)
+            return true;
+        return entry.getResponse() != null && now - started - entry.getTime() > SETTLE_TIME;
+    }
+
+    private static void limitBodies(HarEntry entry) {
+        if (maxBodyChars == 0)
+            return;
+        HarPostData postData = entry.getRequest() == null ? null : entry.getRequest().getPostData();
+        if (postData != null && postData.getText() != null && postData.getText().length() > maxBodyChars)
+            postData.setText(postData.getText().substring(0, maxBodyChars));
+        HarResponse response = entry.getResponse();
+        if (response != null && response.getContent() != null && response.getContent().getText() != null
+                && response.getContent().getText().length() > maxBodyChars)
+            response.getContent().setText(response.getContent().getText().substring(0, maxBodyChars));
+    }
+
+    private static void writeSummary(Recording recording) {
+        List<Map<String, Object>> pages = new ArrayList<>();
+        for (PageStats stats : recording.pages.values()) {
+            System.out.println("-->HarRecorder: " + stats);
+            pages.add(stats.toMap());
+        }
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("scenario", recording.scenario);
+        summary.put("entries", recording.file.getName());
+        summary.put("pages", pages);
+        String path = recording.file.getPath().replaceAll("\\.har\\.ndjson(\\.gz)?$", ".summary.json");
+        Utils.writeSmallBinaryFile(new GsonBuilder().setPrettyPrinting().create().toJson(summary)
+                .getBytes(StandardCharsets.UTF_8), new File(path));
+    }
+
+    /**
+     * Recording of one scenario
+     */
+    private static class Recording {
+        private final String scenario;
+        private final File file;
+        private final Writer out;
+        private final Map<String, PageStats> pages = new LinkedHashMap<>();
+        // entries already written that could not be removed from the proxy
+        private final Set<HarEntry> written = Collections.newSetFromMap(new IdentityHashMap<>());
+        private ScheduledFuture<?> task;
+
+        Recording(String scenario, File file, Writer out) {
+            this.scenario = scenario;
+            this.file = file;
+            this.out = out;
+        }
+
+        void add(HarEntry entry) {
+            String page = entry.getPageref() == null ? scenario : entry.getPageref();
+            pages.computeIfAbsent(page, PageStats::new).add(entry);
+        }
+    }
+
+    /**
+     * Network timings of one page
+     */
+    private static class PageStats {
+        private final String page;
+        private int requests;
+        private long bytes;
+        private long firstStart = Long.MAX_VALUE;
+        private long lastEnd;
+        private long ttfb = -1;
+
+        PageStats(String page) {
+            this.page = page;
+        }
+
+        void add(HarEntry entry) {
+            requests++;
+            HarResponse response = entry.getResponse();
+            if (response != null)
+                bytes += Math.max(0, response.getHeadersSize()) + Math.max(0, response.getBodySize());
+            if (entry.getStartedDateTime() == null)
+                return;
+            long start = entry.getStartedDateTime().getTime();
+            // the time to first byte of the page is the one of its first request
+            if (start < firstStart) {
+                firstStart = start;
+                ttfb = timeToFirstByte(entry.getTimings());
+            }
+            lastEnd = Math.max(lastEnd, start + entry.getTime());
+        }
+
+        private static long timeToFirstByte(HarTimings timings) {
+            if (timings == null)
+                return -1;
+            return positive(timings.getBlocked()) + positive(timings.getDns()) + positive(timings.getConnect()) +
+                    positive(timings.getSsl()) + Math.max(0, timings.getSend()) + Math.max(0, timings.getWait());
+        }
+
+        private static long positive(Long value) {
+            return value == null ? 0 : Math.max(0, value);
+        }
+
+        long getLoadTime() {
+            return firstStart == Long.MAX_VALUE ? -1 : lastEnd - firstStart;
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("page", page);
+            map.put("requests", requests);
+            map.put("transfer_bytes", bytes);
+            map.put("ttfb_ms", ttfb);
+            map.put("load_ms", getLoadTime());
+            return map;
+        }
+
+        @Override
+        public String toString() {
+            return page + ": " + requests + " request(s), " + bytes / 1024 + " KB, ttfb " + ttfb + " ms, load " + getLoadTime() + " ms";
+        }
+    }
+}
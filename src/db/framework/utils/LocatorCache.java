@@ -0,0 +1,262 @@
+package db.framework.utils;
+
+import org.junit.Assert;
+import org.openqa.selenium.By;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cache of compiled element locators.
+ * <p>
+ * The first lookup of an element key walks the page json files, splits the "||" alternatives and builds
+ * their By selectors; every later lookup of the same key is a map hit.
+ * </p>
+ * <p>
+ * The alternatives of a key are checked together by one script in the page ({@link #probe}). Each key counts
+ * how often each alternative won, the most successful one is preferred from then on, and alternatives never
+ * seen displayed are reported at the end of the run.
+ * </p>
+ */
+public class LocatorCache {
+    // returns per candidate 0: not found, 1: found but hidden, 2: displayed
+    private static final String PROBE_SCRIPT =
+            "function find(t,v){switch(t){" +
+                    "case 'id':return document.getElementById(v);" +
+                    "case 'name':return document.getElementsByName(v)[0];" +
+                    "case 'className':return document.getElementsByClassName(v)[0];" +
+                    "case 'tagName':return document.getElementsByTagName(v)[0];" +
+                    "case 'cssSelector':return document.querySelector(v);" +
+                    "case 'xpath':return document.evaluate(v,document,null,9,null).singleNodeValue;" +
+                    "case 'linkText':case 'partialLinkText':var a=document.getElementsByTagName('a');" +
+                    "for(var i=0;i<a.length;i++){var x=(a[i].innerText||a[i].textContent||'').trim();" +
+                    "if(t==='linkText'?x===v:x.indexOf(v)>=0)return a[i];}}return null;}" +
+                    "function state(e){if(!e)return 0;var s=window.getComputedStyle(e);" +
+                    "return (e.offsetWidth||e.offsetHeight||e.getClientRects().length)&&s.visibility!=='hidden'?2:1;}" +
+                    "var q=arguments[0],r=[];" +
+                    "for(var i=0;i<q.length;i++){try{r.push(state(find(q[i][0],q[i][1])));}catch(e){r.push(0);}}" +
+                    "return r;";
+    private static final int DEAD_MIN_PROBES = 5;
+
+    private static final ConcurrentHashMap<String, Optional<List<Locator>>> locators = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, Stats> stats = new ConcurrentHashMap<>();
+
+    /**
+     * Gets the compiled locators of an element
+     *
+     * @param elementKey String selector in format "page_name.element_name"
+     * @return locators in the order they are listed in the json file, null if the element is not defined
+     */
+    public static List<Locator> get(String elementKey) {
+        return locators.computeIfAbsent(elementKey, LocatorCache::compile).orElse(null);
+    }
+
+    /**
+     * Drops all compiled locators and their statistics, e.g. after the page json files changed
+     */
+    public static void clear() {
+        locators.clear();
+        stats.clear();
+    }
+
+    /**
+     * Finds the displayed alternative of an element with one script in the page
+     *
+     * @param elementKey String selector in format "page_name.element_name"
+     * @param locators   alternatives of the element
+     * @param params     values to fill embedded parameters
+     * @return index of the displayed alternative, the one winning most often if several are displayed, or -1
+     */
+    public static int probe(String elementKey, List<Locator> locators, String... params) {
+        List<List<String>> candidates = new ArrayList<>();
+        for (Locator locator : locators)
+            candidates.add(Arrays.asList(locator.getType(), locator.getValue(params)));
+        Object result = StepUtils.execJavascript(PROBE_SCRIPT, candidates);
+        if (!(result instanceof List) || ((List<?>) result).size() != locators.size())
+            return -1;
+        List<?> states = (List<?>) result;
+        boolean[] displayed = new boolean[states.size()];
+        for (int i = 0; i < displayed.length; i++)
+            displayed[i] = states.get(i) instanceof Number && ((Number) states.get(i)).intValue() == 2;
+        Stats stat = stats.computeIfAbsent(elementKey, key -> new Stats(locators.size()));
+        int winner = -1;
+        for (int i : stat.order()) {
+            if (displayed[i]) {
+                winner = i;
+                break;
+            }
+        }
+        stat.record(displayed, winner);
+        return winner;
+    }
+
+    /**
+     * Gets the alternatives of an element, the one winning most often first
+     *
+     * @param elementKey String selector in format "page_name.element_name"
+     * @param locators   alternatives of the element
+     * @return alternatives in the order to try them
+     */
+    public static List<Locator> ordered(String elementKey, List<Locator> locators) {
+        Stats stat = stats.get(elementKey);
+        if (stat == null)
+            return locators;
+        List<Locator> ordered = new ArrayList<>();
+        for (int i : stat.order())
+            ordered.add(locators.get(i));
+        return ordered;
+    }
+
+    /**
+     * Lists the alternatives that were never displayed although their element was looked up several times
+     *
+     * @return one line per alternative
+     */
+    public static List<String> getDeadAlternatives() {
+        List<String> dead = new ArrayList<>();
+        for (String key : new TreeSet<>(stats.keySet())) {
+            List<Locator> compiled = get(key);
+            Stats stat = stats.get(key);
+            synchronized (stat) {
+                if (compiled == null || stat.probes < DEAD_MIN_PROBES)
+                    continue;
+                for (int i = 0; i < stat.displayed.length; i++) {
+                    if (stat.displayed[i] == 0)
+                        dead.add(key + " #" + (i + 1) + " (" + compiled.get(i) + "): never displayed in " + stat.probes + " lookups");
+                }
+            }
+        }
+        return dead;
+    }
+
+    /**
+     * Prints the dead alternatives, if any
+     */
+    public static void printStats() {
+        List<String> dead = getDeadAlternatives();
+        if (dead.isEmpty())
+            return;
+        System.out.println("-->LocatorCache: " + dead.size() + " locator alternative(s) never matched:");
+        for (String line : dead)
+            System.out.println("-->  " + line);
+    }
+
+    private static Optional<List<Locator>> compile(String elementKey) {
+        PageElement elementData = new PageElement(elementKey);
+        String element_value = PageUtils.findPageElementValue(elementData);
+        if (element_value == null)
+            return Optional.empty();
+
+        List<Locator> compiled = new ArrayList<>();
+        for (String retval : element_value.split("\\|\\|")) {
+            elementData.parseResult(retval);
+            if (elementData.elementValue == null)
+                Assert.fail("ERROR - UI: element '" + elementKey + "' is not defined.");
+            if (elementData.elementLocator == null)
+                Assert.fail("ERROR - UI: element locator is not recognizable.");
+            compiled.add(new Locator(elementData.elementLocator, elementData.elementValue));
+        }
+        return Optional.of(Collections.unmodifiableList(compiled));
+    }
+
+    /**
+     * One locator alternative of an element
+     */
+    public static class Locator {
+        private final String type;
+        private final String value;
+        private final By by;
+
+        Locator(String type, String value) {
+            this.type = type;
+            this.value = value;
+            this.by = StepUtils.findLocatorMethod(type, value);
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        public By getBy() {
+            return by;
+        }
+
+        /**
+         * Builds the selector with {arg1}, {arg2}... replaced by params
+         *
+         * @param params values to fill embedded parameters
+         * @return By selector
+         */
+        public By getBy(String... params) {
+            if (params.length == 0)
+                return by;
+            return StepUtils.findLocatorMethod(type, getValue(params));
+        }
+
+        /**
+         * Gets the locator value with {arg1}, {arg2}... replaced by params
+         *
+         * @param params values to fill embedded parameters
+         * @return locator value
+         */
+        public String getValue(String... params) {
+            String param_value = value;
+            int index = 1;
+            for (String param : params) {
+                param_value = param_value.replace("{arg" + Integer.toString(index) + "}", param);
+                index++;
+            }
+            return param_value;
+        }
+
+        @Override
+        public String toString() {
+            return type + ", " + value;
+        }
+    }
+
+    /**
+     * Lookup counts of the alternatives of one element
+     */
+    private static class Stats {
+        private final long[] wins;
+        private final long[] displayed;
+        private long probes;
+
+        Stats(int size) {
+            wins = new long[size];
+            displayed = new long[size];
+        }
+
+        synchronized void record(boolean[] visible, int winner) {
+            probes++;
+            for (int i = 0; i < visible.length; i++) {
+                if (visible[i])
+                    displayed[i]++;
+            }
+            if (winner >= 0)
+                wins[winner]++;
+        }
+
+        // most wins first, json order between equal counts
+        synchronized int[] order() {
+            Integer[] order = new Integer[wins.length];
+            for (int i = 0; i < order.length; i++)
+                order[i] = i;
+            Arrays.sort(order, (a, b) -> Long.compare(wins[b], wins[a]));
+            int[] result = new int[order.length];
+            for (int i = 0; i < order.length; i++)
+                result[i] = order[i];
+            return result;
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package db.framework.utils;
+
+import db.framework.runner.MainRunner;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.FileLockInterruptionException;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Named locks shared by the threads of this run and by the other runs on the machine.
+ * <p>
+ * Inside the JVM each name has a fair {@link ReentrantLock}. The thread holding it then takes an exclusive
+ * {@link FileChannel#lock()} on "name.lock" in "lock_dir" (default "db-locks" in the system temp folder), so
+ * a waiting run wakes up as soon as the other one releases the file. Wait and hold times are recorded per
+ * name and printed at the end of the run.
+ * </p>
+ */
+public class LockService {
+    private static final File lockDir = new File(MainRunner.getExParams("lock_dir") != null ?
+            MainRunner.getExParams("lock_dir") : System.getProperty("java.io.tmpdir") + File.separator + "db-locks");
+    private static final Map<String, NamedLock> locks = new ConcurrentHashMap<>();
+
+    /**
+     * Acquires a named lock, waiting for it up to a timeout
+     *
+     * @param name    lock name
+     * @param timeout maximum wait in milliseconds
+     * @return held lock, or null if it could not be acquired in time
+     */
+    public static Lock acquire(String name, long timeout) {
+        NamedLock lock = locks.computeIfAbsent(name, NamedLock::new);
+        long ts = System.currentTimeMillis();
+        try {
+            if (!lock.lock.tryLock(timeout, TimeUnit.MILLISECONDS)) {
+                lock.timeouts.incrementAndGet();
+                return null;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        // reentrant acquisitions already hold the file
+        if (lock.lock.getHoldCount() == 1 && !lock.lockFile(timeout - (System.currentTimeMillis() - ts))) {
+            lock.timeouts.incrementAndGet();
+            lock.lock.unlock();
+            return null;
+        }
+        lock.acquired(System.currentTimeMillis() - ts);
+        return new Lock(lock);
+    }
+
+    /**
+     * Gets the wait and hold times of the locks used so far
+     *
+     * @return one line per lock name
+     */
+    public static String getStats() {
+        StringBuilder sb = new StringBuilder();
+        for (NamedLock lock : new TreeMap<>(locks).values())
+            sb.append(lock).append('\n');
+        return sb.toString();
+    }
+
+    /**
+     * Prints the lock statistics if any lock was used
+     */
+    public static void printStats() {
+        if (!locks.isEmpty())
+            System.out.print("-->LockService:\n" + getStats());
+    }
+
+    /**
+     * Held lock, release it in a finally block or with try-with-resources
+     */
+    public static class Lock implements AutoCloseable {
+        private final NamedLock lock;
+        private final long ts = System.currentTimeMillis();
+        private boolean released;
+
+        private Lock(NamedLock lock) {
+            this.lock = lock;
+        }
+
+        public String getName() {
+            return lock.name;
+        }
+
+        /**
+         * Releases the lock, does nothing if already released
+         */
+        public void release() {
+            if (released)
+                return;
+            released = true;
+            lock.held(System.currentTimeMillis() - ts);
+            if (lock.lock.getHoldCount() == 1)
+                lock.unlockFile();
+            lock.lock.unlock();
+        }
+
+        @Override
+        public void close() {
+            release();
+        }
+    }
+
+    private static class NamedLock {
+        private final String name;
+        private final ReentrantLock lock = new ReentrantLock(true);
+        private FileChannel channel;
+        private FileLock fileLock;
+        private final AtomicInteger timeouts = new AtomicInteger();
+        // guarded by lock
+        private int acquisitions;
+        private long waitTotal;
+        private long waitMax;
+        private long holdTotal;
+        private long holdMax;
+
+        NamedLock(String name) {
+            this.name = name;
+        }
+
+        // takes the file lock, the watchdog interrupts the wait when the timeout is reached
+        private boolean lockFile(long timeout) {
+            if (timeout <= 0)
+                return false;
+            File file = new File(lockDir, name.replaceAll("[^A-Za-z0-9_.-]+", "_") + ".lock");
+            Utils.ThreadWatchDog watchDog = null;
+            try {
+                if (!lockDir.exists())
+                    lockDir.mkdirs();
+                channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                fileLock = channel.tryLock();
+                if (fileLock == null) {
+                    System.err.println("...LockService: waiting for " + file);
+                    watchDog = new Utils.ThreadWatchDog(Thread.currentThread(), timeout, "LockService:" + name, null);
+                    fileLock = channel.lock();
+                }
+                return true;
+            } catch (FileLockInterruptionException e) {
+                if (watchDog != null)
+                    watchDog.cancel();
+                if (watchDog != null && watchDog.hasInterrupted())
+                    System.err.println("-->LockService: timeout waiting for " + file);
+                else
+                    System.err.println("-->LockService: interrupted while waiting for " + file);
+            } catch (IOException e) {
+                System.err.println("-->LockService: cannot lock " + file + ": " + e.getMessage());
+            } finally {
+                if (watchDog != null) {
+                    watchDog.cancel();
+                    // only clears the interrupt of the watchdog (e.g. firing just after the lock was granted),
+                    // any other interrupt is kept for the caller
+                    if (watchDog.hasInterrupted())
+                        Thread.interrupted();
+                }
+            }
+            unlockFile();
+            return false;
+        }
+
+        private void unlockFile() {
+            try {
+                if (fileLock != null && fileLock.isValid())
+                    fileLock.release();
+                if (channel != null)
+                    channel.close();
+            } catch (IOException e) {
+                System.err.println("-->LockService: cannot release " + name + ": " + e.getMessage());
+            }
+            fileLock = null;
+            channel = null;
+        }
+
+        private void acquired(long wait) {
+            acquisitions++;
+            waitTotal += wait;
+            waitMax = Math.max(waitMax, wait);
+        }
+
+        private void held(long hold) {
+            holdTotal += hold;
+            holdMax = Math.max(holdMax, hold);
+        }
+
+        @Override
+        public String toString() {
+            return name + ": " + acquisitions + " acquired, " + timeouts + " timed out, wait " +
+                    Utils.toDuration(waitTotal) + " (max " + Utils.toDuration(waitMax) + "), hold " +
+                    Utils.toDuration(holdTotal) + " (max " + Utils.toDuration(holdMax) + ")";
+        }
+    }
+}
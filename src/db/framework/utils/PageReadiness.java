@@ -0,0 +1,112 @@
+package db.framework.utils;
+
+import db.framework.runner.MainRunner;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriverException;
+
+import java.util.Map;
+
+/**
+ * Waits for a page to be ready with one asynchronous script call.
+ * <p>
+ * The script installs a small instrumentation in the page the first time it runs after a navigation. It
+ * counts pending XHR and fetch requests and records the time of the last DOM mutation. It then polls
+ * inside the page until the document is loaded, no request (or jQuery ajax call) is pending and the DOM
+ * has been quiet for "page_quiet_ms" (default 100). Pages that never stop changing (a clock, a carousel, a
+ * spinner) count as quiet after "page_quiet_max_ms" (default 2000) of waiting, then only the loaded document
+ * and the pending requests decide. The error text check and the jQuery popup handling run in the same call,
+ * so only a small result object comes back over the wire.
+ * </p>
+ */
+public class PageReadiness {
+    // stay below the 30 second script timeout set on the drivers
+    private static final long MAX_SCRIPT_WAIT = 25 * 1000L;
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long QUIET_MS = Utils.parseInt(MainRunner.getExParams("page_quiet_ms"), 100);
+    private static final long QUIET_MAX_MS = Utils.parseInt(MainRunner.getExParams("page_quiet_max_ms"), 2000);
+
+    private static final String READY_SCRIPT =
+            "var callback = arguments[arguments.length - 1];" +
+            "var text = arguments[0], quiet = arguments[1], timeout = arguments[2], closePopup = arguments[3];" +
+            "var quietMax = arguments[4];" +
+            "var w = window;" +
+            "if (!w.__dbReadiness) {" +
+            "  var r = w.__dbReadiness = {pending: 0, lastChange: Date.now()};" +
+            "  var done = function () { r.pending = Math.max(0, r.pending - 1); r.lastChange = Date.now(); };" +
+            "  if (w.XMLHttpRequest) {" +
+            "    var send = w.XMLHttpRequest.prototype.send;" +
+            "    w.XMLHttpRequest.prototype.send = function () {" +
+            "      r.pending++; r.lastChange = Date.now();" +
+            "      this.addEventListener('loadend', done);" +
+            "      try { return send.apply(this, arguments); } catch (e) { done(); throw e; }" +
+            "    };" +
+            "  }" +
+            "  if (w.fetch) {" +
+            "    var fetch = w.fetch;" +
+            "    w.fetch = function () {" +
+            "      r.pending++; r.lastChange = Date.now();" +
+            "      try { var p = fetch.apply(this, arguments); p.then(done, done); return p; } catch (e) { done(); throw e; }" +
+            "    };" +
+            "  }" +
+            "  if (w.MutationObserver && document.documentElement)" +
+            "    new MutationObserver(function () { r.lastChange = Date.now(); })" +
+            "      .observe(document.documentElement, {childList: true, subtree: true, characterData: true});" +
+            "}" +
+            "var state = w.__dbReadiness, start = Date.now();" +
+            "(function check() {" +
+            "  var body = document.body;" +
+            "  var ajax = w.jQuery && w.jQuery.active ? w.jQuery.active : 0;" +
+            "  var ready = /complete|loaded|interactive/.test(document.readyState) && state.pending === 0 && ajax === 0" +
+            "    && (Date.now() - state.lastChange >= quiet || Date.now() - start >= quietMax)" +
+            "    && (!text || (!!body && body.textContent.indexOf(text) >= 0));" +
+            "  if (!ready && Date.now() - start < timeout) { setTimeout(check, 50); return; }" +
+            "  var result = {ready: ready, error: false, popup: false};" +
+            "  try { result.error = !!body && /not found|bad gateway:/i.test(body.textContent); } catch (e) {}" +
+            "  if (closePopup && w.jQuery) {" +
+            "    try {" +
+            "      var overlay = w.jQuery('div.rc-overlay-visible');" +
+            "      if (overlay.text().indexOf('some technical issues') >= 0) { overlay.find('button').click(); result.popup = true; }" +
+            "    } catch (e) {}" +
+            "  }" +
+            "  callback(result);" +
+            "})();";
+
+    /**
+     * Waits until the page of the current thread is ready
+     *
+     * @param containText text the page has to contain, null to skip the check
+     * @param closePopup  whether to close the jQuery "technical issues" popup
+     * @return true if the page is not an error page, false if it is, null if the page could not be
+     * instrumented and the caller should fall back to polling
+     */
+    public static Boolean waitForReady(String containText, boolean closePopup) {
+        JavascriptExecutor executor = (JavascriptExecutor) MainRunner.getWebDriver();
+        long deadline = System.currentTimeMillis() + MainRunner.timeout * 1000L;
+        int attempts = 0;
+        while (true) {
+            long wait = Math.max(0, Math.min(deadline - System.currentTimeMillis(), MAX_SCRIPT_WAIT));
+            Object returned;
+            try {
+                returned = executor.executeAsyncScript(READY_SCRIPT, containText, QUIET_MS, wait, closePopup, QUIET_MAX_MS);
+                if (!(returned instanceof Map))
+                    throw new WebDriverException("unexpected result: " + returned);
+            } catch (WebDriverException ex) {
+                // e.g. the page unloaded while waiting, the next page gets a fresh instrumentation
+                if (++attempts >= MAX_ATTEMPTS || System.currentTimeMillis() >= deadline) {
+                    if (MainRunner.isDebug())
+                        System.err.println("-->PageReadiness: falling back to polling: " + ex.getMessage());
+                    return null;
+                }
+                continue;
+            }
+
+            Map<?, ?> result = (Map<?, ?>) returned;
+            boolean ready = Boolean.TRUE.equals(result.get("ready"));
+            if (ready || System.currentTimeMillis() >= deadline) {
+                if (!ready)
+                    System.out.println("page has exceeded wait time: " + MainRunner.timeout);
+                return !Boolean.TRUE.equals(result.get("error"));
+            }
+        }
+    }
+}
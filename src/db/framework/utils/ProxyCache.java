@@ -0,0 +1,354 @@
+package db.framework.utils;
+
+import db.framework.runner.MainRunner;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.buffer.UnpooledDirectByteBuf;
+import io.netty.util.internal.PlatformDependent;
+import org.apache.commons.codec.digest.DigestUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Response cache of the proxy, used by {@link ProxyFilters}.
+ * <p>
+ * Entries live in two tiers. The memory tier is an LRU of direct buffers bounded to "proxy_cache_memory_mb"
+ * (default 64), entries bigger than an eighth of it are only kept on disk. The disk tier is the temp folder:
+ * one file per url (named by the SHA-256 of the url) plus a ".meta" file holding the content type and ETag.
+ * New responses go to memory right away and are written to disk by a background thread, so the proxy I/O
+ * threads never wait on the file system for a cached asset after its first use.
+ * </p>
+ * <p>
+ * Files of "proxy_cache_mmap_kb" (default 256) or more are not copied into memory but mapped and served
+ * from the mapping. The last "proxy_cache_mappings" (default 64) mappings are shared by all requests; a
+ * mapping dropped from that list is unmapped once the last response using it has been written.
+ * </p>
+ */
+public class ProxyCache {
+    private static final String META_SUFFIX = ".meta";
+    private static final String CONTENT_TYPE = "content-type";
+    private static final String ETAG = "etag";
+
+    private static final long maxBytes = Math.max(1, Utils.parseInt(MainRunner.getExParams("proxy_cache_memory_mb"), 64)) * 1024L * 1024L;
+    private static final long maxEntryBytes = maxBytes / 8;
+    private static final long mmapThreshold = Math.max(1, Utils.parseInt(MainRunner.getExParams("proxy_cache_mmap_kb"), 256)) * 1024L;
+    private static final int maxMappings = Math.max(1, Utils.parseInt(MainRunner.getExParams("proxy_cache_mappings"), 64));
+
+    private static final LinkedHashMap<String, Entry> memory = new LinkedHashMap<>(64, 0.75f, true);
+    private static long memoryBytes;
+    private static final LinkedHashMap<String, Entry> mappings = new LinkedHashMap<>(16, 0.75f, true);
+    private static final Set<String> pendingWrites = ConcurrentHashMap.newKeySet();
+    private static final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread th = new Thread(r, "ProxyCache-writer");
+        th.setDaemon(true);
+        return th;
+    });
+
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong mappedHits = new AtomicLong();
+    private static final AtomicLong diskHits = new AtomicLong();
+    private static final AtomicLong misses = new AtomicLong();
+    private static final AtomicLong evictions = new AtomicLong();
+    private static final AtomicLong writes = new AtomicLong();
+    private static final AtomicLong unmaps = new AtomicLong();
+
+    /**
+     * Looks up a cached response, loading it from disk into memory if needed
+     *
+     * @param url request url
+     * @return entry or null if the url is not cached. Release the content when done with it.
+     */
+    public static Entry get(String url) {
+        String key = DigestUtils.sha256Hex(url);
+        Entry entry;
+        synchronized (memory) {
+            entry = memory.get(key);
+            if (entry != null) {
+                hits.incrementAndGet();
+                return entry.retain();
+            }
+        }
+        synchronized (mappings) {
+            entry = mappings.get(key);
+            if (entry != null) {
+                mappedHits.incrementAndGet();
+                return entry.retain();
+            }
+        }
+        entry = load(key);
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        diskHits.incrementAndGet();
+        if (entry.mapped)
+            return share(key, entry);
+        return cache(key, entry) ? entry.retain() : entry;
+    }
+
+    /**
+     * Caches a response, if not already cached. The disk copy is written in the background.
+     *
+     * @param url         request url
+     * @param content     response body
+     * @param contentType response content type, may be null
+     * @param etag        response ETag, may be null
+     */
+    public static void put(String url, byte[] content, String contentType, String etag) {
+        if (content == null || content.length == 0)
+            return;
+        String key = DigestUtils.sha256Hex(url);
+        synchronized (memory) {
+            if (memory.containsKey(key))
+                return;
+        }
+        if (!pendingWrites.add(key))
+            return;
+        // large files are mapped from disk once written
+        if (content.length < mmapThreshold) {
+            Entry entry = new Entry(Unpooled.directBuffer(content.length).writeBytes(content), contentType, etag, false);
+            if (!cache(key, entry))
+                entry.release();
+        }
+        writer.execute(() -> {
+            try {
+                write(key, content, contentType, etag);
+            } finally {
+                pendingWrites.remove(key);
+            }
+        });
+    }
+
+    /**
+     * Waits for pending disk writes, frees the memory tier and prints the cache counters
+     */
+    public static void shutdown() {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (memory) {
+            for (Entry entry : memory.values())
+                entry.release();
+            memory.clear();
+            memoryBytes = 0;
+        }
+        synchronized (mappings) {
+            for (Entry entry : mappings.values())
+                entry.release();
+            mappings.clear();
+        }
+        if (hits.get() + mappedHits.get() + diskHits.get() + writes.get() > 0)
+            System.out.println("-->ProxyCache: " + getStats());
+    }
+
+    /**
+     * Gets the cache counters
+     *
+     * @return counters as text
+     */
+    public static String getStats() {
+        synchronized (memory) {
+            synchronized (mappings) {
+                return "memory hits: " + hits + ", mapped hits: " + mappedHits + ", disk hits: " + diskHits +
+                        ", misses: " + misses + ", evictions: " + evictions + ", unmaps: " + unmaps +
+                        ", disk writes: " + writes + ", in memory: " + memory.size() + " (" + memoryBytes / 1024 +
+                        " KB), mapped: " + mappings.size();
+            }
+        }
+    }
+
+    // keeps the entry in memory, evicting the least recently used entries over the budget
+    private static boolean cache(String key, Entry entry) {
+        long size = entry.content.readableBytes();
+        if (size > maxEntryBytes)
+            return false;
+        synchronized (memory) {
+            Entry previous = memory.put(key, entry);
+            if (previous != null) {
+                memoryBytes -= previous.content.readableBytes();
+                previous.release();
+            }
+            memoryBytes += size;
+            Iterator<Map.Entry<String, Entry>> it = memory.entrySet().iterator();
+            while (memoryBytes > maxBytes && it.hasNext()) {
+                Entry eldest = it.next().getValue();
+                it.remove();
+                memoryBytes -= eldest.content.readableBytes();
+                eldest.release();
+                evictions.incrementAndGet();
+            }
+        }
+        return true;
+    }
+
+    // shares the mapping with later requests, unmapping the least recently used mappings over the limit
+    private static Entry share(String key, Entry entry) {
+        synchronized (mappings) {
+            Entry previous = mappings.put(key, entry);
+            if (previous != null)
+                previous.release();
+            Iterator<Map.Entry<String, Entry>> it = mappings.entrySet().iterator();
+            while (mappings.size() > maxMappings && it.hasNext()) {
+                Entry eldest = it.next().getValue();
+                it.remove();
+                eldest.release();
+            }
+            return entry.retain();
+        }
+    }
+
+    // maps large files, reads small ones straight into a direct buffer
+    private static Entry load(String key) {
+        File file = getFile(key);
+        if (!file.exists())
+            return null;
+        // an empty file is a failed write, deleted before it is opened (open files cannot be deleted on windows)
+        if (file.length() == 0) {
+            file.delete();
+            return null;
+        }
+        ByteBuf content = null;
+        try {
+            Properties meta = new Properties();
+            File metaFile = getFile(key + META_SUFFIX);
+            if (metaFile.exists()) {
+                try (InputStream in = Files.newInputStream(metaFile.toPath())) {
+                    meta.load(in);
+                }
+            }
+            boolean mapped;
+            // private mappings are not read-only buffers, which the netty wrapper does not accept
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                long size = channel.size();
+                if (size == 0)
+                    return null;
+                mapped = size >= mmapThreshold && size <= Integer.MAX_VALUE;
+                if (mapped) {
+                    content = new MappedByteBuf(channel.map(FileChannel.MapMode.PRIVATE, 0, size));
+                } else {
+                    content = Unpooled.directBuffer((int) size);
+                    while (content.isWritable() && content.writeBytes(channel, content.writableBytes()) >= 0) {
+                        // read until the buffer is full
+                    }
+                }
+            }
+            return new Entry(content, meta.getProperty(CONTENT_TYPE), meta.getProperty(ETAG), mapped);
+        } catch (IOException e) {
+            if (content != null)
+                content.release();
+            System.err.println("-->ProxyCache: cannot read " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static void write(String key, byte[] content, String contentType, String etag) {
+        File file = getFile(key);
+        if (file.exists())
+            return;
+        try {
+            Properties meta = new Properties();
+            if (contentType != null)
+                meta.setProperty(CONTENT_TYPE, contentType);
+            if (etag != null)
+                meta.setProperty(ETAG, etag);
+            try (OutputStream out = Files.newOutputStream(getFile(key + META_SUFFIX).toPath())) {
+                meta.store(out, null);
+            }
+            // the content file is moved in place last, readers only look at complete entries
+            File part = getFile(key + ".part");
+            Files.write(part.toPath(), content);
+            Files.move(part.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            writes.incrementAndGet();
+        } catch (IOException e) {
+            System.err.println("-->ProxyCache: cannot write " + file + ": " + e.getMessage());
+        }
+    }
+
+    private static File getFile(String name) {
+        return new File(MainRunner.temp + name);
+    }
+
+    /**
+     * Cached response
+     */
+    public static class Entry {
+        private final ByteBuf content;
+        private final String contentType;
+        private final String etag;
+        private final boolean mapped;
+
+        Entry(ByteBuf content, String contentType, String etag, boolean mapped) {
+            this.content = content;
+            this.contentType = contentType;
+            this.etag = etag;
+            this.mapped = mapped;
+        }
+
+        /**
+         * Gets the body, the caller owns one reference to it
+         *
+         * @return response body
+         */
+        public ByteBuf getContent() {
+            return content;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        // a view on the shared buffer owning its own reference
+        private Entry retain() {
+            return new Entry(content.duplicate().retain(), contentType, etag, mapped);
+        }
+
+        private void release() {
+            content.release();
+        }
+    }
+
+    /**
+     * Buffer over a file mapping, unmapping it when the last reference is released
+     */
+    private static class MappedByteBuf extends UnpooledDirectByteBuf {
+        private final MappedByteBuffer mapping;
+
+        MappedByteBuf(MappedByteBuffer mapping) {
+            super(UnpooledByteBufAllocator.DEFAULT, mapping, mapping.capacity());
+            this.mapping = mapping;
+        }
+
+        @Override
+        protected void deallocate() {
+            super.deallocate();
+            PlatformDependent.freeDirectBuffer(mapping);
+            unmaps.incrementAndGet();
+        }
+    }
+}
@@ -1,21 +1,19 @@
 package db.framework.utils;
 
-import db.framework.runner.MainRunner;
-import io.netty.buffer.Unpooled;
 import io.netty.handler.codec.http.*;
 import net.lightbody.bmp.filters.RequestFilter;
 import net.lightbody.bmp.filters.ResponseFilter;
 import net.lightbody.bmp.util.HttpMessageContents;
 import net.lightbody.bmp.util.HttpMessageInfo;
-import org.apache.commons.codec.digest.DigestUtils;
 
-import java.io.File;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.HashSet;
 
 import static io.netty.handler.codec.http.HttpHeaders.Names.CONTENT_LENGTH;
 import static io.netty.handler.codec.http.HttpHeaders.Names.CONTENT_TYPE;
+import static io.netty.handler.codec.http.HttpHeaders.Names.ETAG;
+import static io.netty.handler.codec.http.HttpHeaders.Names.IF_NONE_MATCH;
 
 public class ProxyFilters {
     static String envURL;
@@ -45,10 +43,6 @@ public class ProxyFilters {
         createFilterDomains("http://data.coremetrics.com/cookie-id.js?fn=eluminate967");
     }
 
-    private static File getCacheFile(String url) {
-        return new File(MainRunner.temp + DigestUtils.sha256Hex(url));
-    }
-
     private static boolean isFilter(String url, HttpMessageContents contents) {
         String domain = getDomain(url);
         for (String exclude : excludeDomains) {
@@ -69,16 +63,21 @@ public class ProxyFilters {
         public HttpResponse filterRequest(HttpRequest request, HttpMessageContents contents, HttpMessageInfo messageInfo) {
             String url = messageInfo.getOriginalUrl();
             if (isFilter(url, contents)) {
-                File fcache = getCacheFile(url);
-                if (fcache.exists()) {
-                    if (fcache.length() == 0)
-                        fcache.delete();
-                    else {
-                        DefaultFullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK, Unpooled.copiedBuffer(Utils.readSmallBinaryFile(fcache)));
-                        response.headers().set(CONTENT_TYPE, contents.getContentType());
-                        response.headers().set(CONTENT_LENGTH, response.content().readableBytes());
+                ProxyCache.Entry cached = ProxyCache.get(url);
+                if (cached != null) {
+                    String etag = cached.getEtag();
+                    if (etag != null && etag.equals(request.headers().get(IF_NONE_MATCH))) {
+                        cached.getContent().release();
+                        DefaultFullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.NOT_MODIFIED);
+                        response.headers().set(ETAG, etag);
                         return response;
                     }
+                    DefaultFullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK, cached.getContent());
+                    response.headers().set(CONTENT_TYPE, cached.getContentType() != null ? cached.getContentType() : contents.getContentType());
+                    response.headers().set(CONTENT_LENGTH, response.content().readableBytes());
+                    if (etag != null)
+                        response.headers().set(ETAG, etag);
+                    return response;
                 }
             }
             return null;
@@ -90,10 +89,7 @@ public class ProxyFilters {
         public void filterResponse(HttpResponse response, HttpMessageContents contents, HttpMessageInfo messageInfo) {
             String url = messageInfo.getOriginalUrl();
             if (response.getStatus().equals(HttpResponseStatus.OK) && isFilter(url, contents)) {
-                File fcache = getCacheFile(url);
-                if (!fcache.exists()) {
-                    Utils.writeSmallBinaryFile(contents.getBinaryContents(), fcache);
-                }
+                ProxyCache.put(url, contents.getBinaryContents(), response.headers().get(CONTENT_TYPE), response.headers().get(ETAG));
             }
         }
     }
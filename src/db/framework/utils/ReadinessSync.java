@@ -0,0 +1,68 @@
+package db.framework.utils;
+
+import db.framework.runner.MainRunner;
+
+/**
+ * Decides when element lookups wait for the page to be ready.
+ * <p>
+ * The mode is given by the "element_ready_sync" env variable or ex_param:
+ * </p>
+ * <ul>
+ * <li>always - wait before every element lookup</li>
+ * <li>on_navigation (default) - wait on the first lookup after a click, visit, back, refresh or window switch</li>
+ * <li>never - lookups never wait, steps call waitForPageReady() themselves</li>
+ * </ul>
+ */
+public class ReadinessSync {
+    public enum Mode {
+        ALWAYS, ON_NAVIGATION, NEVER
+    }
+
+    private static final Mode mode = parseMode(MainRunner.getExParams("element_ready_sync"));
+    private static final ThreadLocal<Boolean> navigated = ThreadLocal.withInitial(() -> Boolean.TRUE);
+
+    public static Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Records that the page of the current thread may have changed
+     */
+    public static void markNavigation() {
+        navigated.set(Boolean.TRUE);
+    }
+
+    /**
+     * Records that the page of the current thread has been waited for
+     */
+    public static void markReady() {
+        navigated.set(Boolean.FALSE);
+    }
+
+    /**
+     * Checks if an element lookup has to wait for the page first
+     *
+     * @return true if the page should be waited for
+     */
+    public static boolean needsSync() {
+        switch (mode) {
+            case ALWAYS:
+                return true;
+            case NEVER:
+                return false;
+            default:
+                return navigated.get();
+        }
+    }
+
+    private static Mode parseMode(String value) {
+        if (value == null)
+            return Mode.ON_NAVIGATION;
+        try {
+            return Mode.valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            System.err.println("-->ReadinessSync: unknown element_ready_sync '" + value + "', using on_navigation");
+            return Mode.ON_NAVIGATION;
+        }
+    }
+}
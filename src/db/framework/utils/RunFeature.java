@@ -16,10 +16,14 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
 
 public class RunFeature {
     private static final String m_version = "1a.0001";
+    private static final long ABORT_POLL_INTERVAL = 60 * 1000L;
     private static int m_pid;
+    private static volatile boolean m_aborted;
+    private static WatchDogScheduler.Watch m_abortWatch;
     private File m_repo_jar;
     private String m_workspace;
     private String m_eeURL;
@@ -59,13 +63,33 @@ public class RunFeature {
             if (args.length == 0) {
                 new RunFeature();
             } else if (args[0].equals("-self_clean")) {
-                new ProcessWatchDog();
+                // the watchdog runs on daemon threads
+                new ProcessWatchDog().await();
             }
         } catch (Throwable e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * Checks if the build was aborted. The build status is fetched once, then refreshed every minute in the
+     * background, so this can be called before every scenario.
+     *
+     * @return true if the build was aborted
+     */
+    public static boolean isAborted() {
+        if (System.getenv("BUILD_URL") == null)
+            return false;
+        synchronized (RunFeature.class) {
+            if (m_abortWatch == null) {
+                m_aborted = checkAborted();
+                m_abortWatch = WatchDogScheduler.pollAtFixedRate("RunFeature.isAborted", ABORT_POLL_INTERVAL,
+                        ABORT_POLL_INTERVAL, () -> m_aborted = m_aborted || checkAborted());
+            }
+        }
+        return m_aborted;
+    }
+
     public static boolean checkAborted() {
         if (System.getenv("BUILD_URL") == null)
             return false;
@@ -198,22 +222,42 @@ public class RunFeature {
         }
     }
 
-    public static class ProcessWatchDog extends Thread {
+    /**
+     * Kills the runner process if the build gets aborted, checking every minute for 3 hours
+     */
+    public static class ProcessWatchDog {
+        private static final long INTERVAL = 60 * 1000L;
+        private static final long DURATION = 3 * 60 * 60 * 1000L;
+        private final CountDownLatch m_done = new CountDownLatch(1);
+        private final WatchDogScheduler.Watch m_poll;
+        private final WatchDogScheduler.Watch m_expiry;
+
         public ProcessWatchDog() {
-            this.start();
+            this.m_poll = WatchDogScheduler.pollAtFixedRate("RunFeature.ProcessWatchDog", 0, INTERVAL, this::check);
+            this.m_expiry = WatchDogScheduler.schedule("RunFeature.ProcessWatchDog.expiry", DURATION, this::stop);
         }
 
-        public void run() {
-            long ts = System.currentTimeMillis();
-            long dur = 3 * 60 * 60 * 1000;
-            while (System.currentTimeMillis() - ts < dur) {
-                if (checkAborted()) {
-                    System.out.println(Utils.executeCMD("taskkill /f /t /PID " + m_pid));
-                    break;
-                }
-                Utils.threadSleep(60 * 1000, "RunFeature.ProcessWatchDog.run()");
+        /**
+         * Waits until the build was aborted or the watch expired
+         *
+         * @throws InterruptedException if interrupted while waiting
+         */
+        public void await() throws InterruptedException {
+            this.m_done.await();
+        }
+
+        private void check() {
+            if (checkAborted()) {
+                System.out.println(Utils.executeCMD("taskkill /f /t /PID " + m_pid));
+                this.stop();
             }
         }
+
+        private void stop() {
+            this.m_poll.cancel();
+            this.m_expiry.cancel();
+            this.m_done.countDown();
+        }
     }
 
     public static class PushLog extends Thread {
@@ -0,0 +1,125 @@
+package db.framework.utils;
+
+import db.framework.runner.MainRunner;
+import org.openqa.selenium.OutputType;
+import org.openqa.selenium.TakesScreenshot;
+
+import javax.imageio.ImageIO;
+import java.awt.Rectangle;
+import java.awt.Robot;
+import java.awt.Toolkit;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Takes screenshots without blocking the test thread on encoding and disk I/O.
+ * <p>
+ * Only grabbing the image happens on the calling thread: the browser screenshot as PNG bytes, or the
+ * desktop as an image when the browser cannot be captured. Encoding and writing run on a small pool of
+ * "screenshot_writers" threads (default 2) with a queue of "screenshot_queue" captures (default 16). When
+ * the queue is full the caller writes the screenshot itself, which bounds memory on failure-heavy runs.
+ * Files are written to a temporary name and moved in place, so a referenced file is either complete or
+ * not there yet.
+ * </p>
+ */
+public class ScreenshotPipeline {
+    private static final ThreadPoolExecutor writers;
+
+    static {
+        int threads = Math.max(1, Utils.parseInt(MainRunner.getExParams("screenshot_writers"), 2));
+        int queue = Math.max(1, Utils.parseInt(MainRunner.getExParams("screenshot_queue"), 16));
+        AtomicInteger count = new AtomicInteger();
+        writers = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS, new ArrayBlockingQueue<>(queue), r -> {
+            Thread th = new Thread(r, "ScreenshotPipeline-writer-" + count.incrementAndGet());
+            th.setDaemon(true);
+            return th;
+        }, new ThreadPoolExecutor.CallerRunsPolicy());
+        writers.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Captures the browser of the current thread, or the desktop if that fails, into a file of the log folder
+     *
+     * @param fileName file name relative to the log folder
+     * @return completes with the written file, or exceptionally if nothing could be captured or written
+     */
+    public static Future<File> capture(String fileName) {
+        File target = new File(MainRunner.logs + fileName);
+        CompletableFuture<File> result = new CompletableFuture<>();
+        Runnable write;
+        try {
+            byte[] png = ((TakesScreenshot) MainRunner.getWebDriver()).getScreenshotAs(OutputType.BYTES);
+            write = () -> write(target, result, out -> out.write(png));
+        } catch (Exception ex) {
+            System.err.println("-->ScreenshotPipeline: cannot capture browser, capturing desktop: " + ex.getMessage());
+            try {
+                BufferedImage image = new Robot().createScreenCapture(new Rectangle(Toolkit.getDefaultToolkit().getScreenSize()));
+                write = () -> write(target, result, out -> ImageIO.write(image, "png", out));
+            } catch (Exception e) {
+                System.out.println("Cannot desktop capture.");
+                result.completeExceptionally(e);
+                return result;
+            }
+        }
+        writers.execute(write);
+        return result;
+    }
+
+    /**
+     * Waits for screenshots to be written
+     *
+     * @param pending   captures to wait for
+     * @param timeoutMs maximum time to wait for all of them
+     * @return number of screenshots that were not written
+     */
+    public static int await(Collection<Future<File>> pending, long timeoutMs) {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        int failed = 0;
+        for (Future<File> future : pending) {
+            try {
+                future.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return pending.size();
+            } catch (ExecutionException | TimeoutException e) {
+                failed++;
+            }
+        }
+        if (failed > 0)
+            System.err.println("-->ScreenshotPipeline: " + failed + " screenshot(s) not written");
+        return failed;
+    }
+
+    private static void write(File target, CompletableFuture<File> result, ImageWriter writer) {
+        File part = new File(target.getPath() + ".part");
+        try {
+            try (OutputStream out = Files.newOutputStream(part.toPath())) {
+                writer.write(out);
+            }
+            Files.move(part.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            result.complete(target);
+        } catch (Exception e) {
+            System.err.println("-->ScreenshotPipeline: cannot write " + target + ": " + e.getMessage());
+            part.delete();
+            result.completeExceptionally(e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface ImageWriter {
+        void write(OutputStream out) throws IOException;
+    }
+}
@@ -0,0 +1,191 @@
+package db.framework.utils;
+
+import com.google.gson.Gson;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs scripts in one browser. There is no lock, scripts of different browsers run in parallel.
+ * <p>
+ * A {@link Batch} runs several small scripts in one round-trip, each with its own arguments, and returns
+ * their results (or errors) by name:
+ * </p>
+ * <pre>
+ * ScriptExecutor.Result r = ScriptExecutor.of(driver).batch()
+ *         .add("state", ScriptExecutor.READY_STATE)
+ *         .add("ajax", ScriptExecutor.JQUERY_ACTIVE)
+ *         .add("shown", ScriptExecutor.IS_VISIBLE, element)
+ *         .run();
+ * </pre>
+ */
+public class ScriptExecutor {
+    public static final String READY_STATE = "return document.readyState";
+    // pages without jQuery have no pending jQuery calls
+    public static final String JQUERY_ACTIVE = "return window.jQuery ? window.jQuery.active : 0";
+    public static final String PAGE_TEXT = "return document.body ? document.body.textContent : ''";
+    public static final String IS_VISIBLE = "var e=arguments[0];if(!e)return false;var s=window.getComputedStyle(e);" +
+            "return !!(e.offsetWidth||e.offsetHeight||e.getClientRects().length)&&s.visibility!=='hidden';";
+    public static final String TEXT = "var e=arguments[0];return e ? (e.innerText||e.textContent||'').trim() : null;";
+
+    private final JavascriptExecutor executor;
+
+    private ScriptExecutor(WebDriver driver) {
+        this.executor = (JavascriptExecutor) driver;
+    }
+
+    /**
+     * Gets the script executor of a browser
+     *
+     * @param driver browser
+     * @return executor running scripts in that browser
+     */
+    public static ScriptExecutor of(WebDriver driver) {
+        return new ScriptExecutor(driver);
+    }
+
+    /**
+     * Executes a script
+     *
+     * @param script JS code
+     * @param args   arguments of the script
+     * @return returned value of the script (if any)
+     * @throws org.openqa.selenium.WebDriverException if the script failed
+     */
+    public Object execute(String script, Object... args) {
+        return executor.executeScript(script, args);
+    }
+
+    /**
+     * Starts a batch of scripts
+     *
+     * @return empty batch
+     */
+    public Batch batch() {
+        return new Batch(this);
+    }
+
+    /**
+     * Scripts run together in one call
+     */
+    public static class Batch {
+        private static final Gson gson = new Gson();
+        private final ScriptExecutor executor;
+        private final List<String> names = new ArrayList<>();
+        private final StringBuilder script = new StringBuilder("var a=arguments,r={};");
+        private final List<Object> args = new ArrayList<>();
+
+        private Batch(ScriptExecutor executor) {
+            this.executor = executor;
+        }
+
+        /**
+         * Adds a script, it may return a value like a script given to {@link #execute}
+         *
+         * @param name   name of the result
+         * @param script JS code
+         * @param args   arguments of this script
+         * @return this batch
+         */
+        public Batch add(String name, String script, Object... args) {
+            String key = gson.toJson(name);
+            // each script runs in its own function, a failing script does not stop the others
+            this.script.append("try{r[").append(key).append("]={v:(function(){").append(script)
+                    .append("\n}).apply(null,a[").append(this.args.size()).append("])};}catch(e){r[")
+                    .append(key).append("]={e:String(e)};}");
+            this.names.add(name);
+            this.args.add(Arrays.asList(args));
+            return this;
+        }
+
+        /**
+         * Runs all scripts in one call
+         *
+         * @return results by name
+         * @throws org.openqa.selenium.WebDriverException if the batch could not be run
+         */
+        public Result run() {
+            if (names.isEmpty())
+                return new Result(Collections.emptyMap(), Collections.emptyMap());
+            Object ret = executor.execute(script + "return r;", args.toArray());
+            Map<String, Object> values = new LinkedHashMap<>();
+            Map<String, String> errors = new LinkedHashMap<>();
+            Map<?, ?> returned = ret instanceof Map ? (Map<?, ?>) ret : Collections.emptyMap();
+            for (String name : names) {
+                Object entry = returned.get(name);
+                if (!(entry instanceof Map)) {
+                    errors.put(name, "no result");
+                    continue;
+                }
+                Map<?, ?> result = (Map<?, ?>) entry;
+                if (result.containsKey("e"))
+                    errors.put(name, String.valueOf(result.get("e")));
+                else
+                    values.put(name, result.get("v"));
+            }
+            return new Result(values, errors);
+        }
+    }
+
+    /**
+     * Results of a batch
+     */
+    public static class Result {
+        private final Map<String, Object> values;
+        private final Map<String, String> errors;
+
+        private Result(Map<String, Object> values, Map<String, String> errors) {
+            this.values = values;
+            this.errors = errors;
+        }
+
+        /**
+         * Gets the value returned by a script
+         *
+         * @param name name of the script
+         * @return returned value, null if the script returned nothing or failed
+         */
+        public Object get(String name) {
+            return values.get(name);
+        }
+
+        public String getString(String name) {
+            Object value = values.get(name);
+            return value == null ? null : value.toString();
+        }
+
+        public long getLong(String name, long defaultValue) {
+            Object value = values.get(name);
+            return value instanceof Number ? ((Number) value).longValue() : defaultValue;
+        }
+
+        public boolean getBoolean(String name) {
+            return Boolean.TRUE.equals(values.get(name));
+        }
+
+        /**
+         * Gets the error of a failed script
+         *
+         * @param name name of the script
+         * @return error message or null if the script succeeded
+         */
+        public String getError(String name) {
+            return errors.get(name);
+        }
+
+        public boolean failed(String name) {
+            return errors.containsKey(name);
+        }
+
+        @Override
+        public String toString() {
+            return errors.isEmpty() ? values.toString() : values + ", errors: " + errors;
+        }
+    }
+}
@@ -22,11 +22,13 @@ import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.FileOutputStream;
-import java.net.ServerSocket;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
@@ -36,6 +38,10 @@ import java.util.stream.Collectors;
 public abstract class StepUtils {
     private static Runnable beforeNavigate;
     private static Runnable afterNavigate;
+    // page last visited by each thread, for its flyout menus
+    private static final ThreadLocal<String> currentPage = new ThreadLocal<>();
+    // page name -> element to move the mouse to, then the flyout menus, all as "page_name.element_name"
+    private static final Map<String, List<String>> flyoutsByPage = new ConcurrentHashMap<>();
     protected ScenarioImpl scenario = null;
 
     /**
@@ -104,13 +110,15 @@ public abstract class StepUtils {
      * Navigates the browser back a page
      */
     public static void browserBack() {
+        ReadinessSync.markNavigation();
         if (safari()) {
             try {
-                int urlStackSize = MainRunner.URLStack.size();
+                List<String> urlStack = MainRunner.getURLStack();
+                int urlStackSize = urlStack.size();
                 if (urlStackSize <= 1)
                     visit("home");
                 else
-                    MainRunner.getWebDriver().get(MainRunner.URLStack.get(urlStackSize - 2));
+                    MainRunner.getWebDriver().get(urlStack.get(urlStackSize - 2));
             } catch (Exception e) {
                 e.printStackTrace();
             }
@@ -124,6 +132,7 @@ public abstract class StepUtils {
      * Refreshes the current browser page
      */
     public static void browserRefresh() {
+        ReadinessSync.markNavigation();
         if (safari()) {
             StepUtils.execJavascript("document.location.reload()");
         } else {
@@ -137,6 +146,7 @@ public abstract class StepUtils {
      * @param frame either "default" for default frame or selector in format "page_name.element_name"
      */
     public static void switchToFrame(String frame) {
+        ReadinessSync.markNavigation();
         try {
             if (frame.equalsIgnoreCase("default")) {
                 MainRunner.getWebDriver().switchTo().defaultContent();
@@ -198,7 +208,7 @@ public abstract class StepUtils {
      * @param selector By selector to use
      */
     public static void sendEnter(By selector) {
-        StepUtils.findElement(selector).sendKeys(Keys.ENTER);
+        sendEnter(StepUtils.findElement(selector));
     }
 
     /**
@@ -208,6 +218,7 @@ public abstract class StepUtils {
      */
     public static void sendEnter(WebElement el) {
         el.sendKeys(Keys.ENTER);
+        ReadinessSync.markNavigation();
     }
 
     /**
@@ -217,7 +228,7 @@ public abstract class StepUtils {
      * @param exitCondition lambda expression to run after sending enter
      */
     public static void sendEnter(By selector, Runnable exitCondition) {
-        StepUtils.findElement(selector).sendKeys(Keys.ENTER);
+        sendEnter(StepUtils.findElement(selector));
         exitCondition.run();
     }
 
@@ -441,6 +452,7 @@ public abstract class StepUtils {
         } else {
             element.sendKeys(Keys.RETURN);
         }
+        ReadinessSync.markNavigation();
     }
 
     /**
@@ -656,6 +668,7 @@ public abstract class StepUtils {
             beforeNavigate.run();
 
         execJavascript("arguments[0].focus();arguments[0].click();", e);
+        ReadinessSync.markNavigation();
 
         waitForPageReady();
         if (afterNavigate != null)
@@ -752,13 +765,56 @@ public abstract class StepUtils {
     }
 
     /**
-     * Hovers over and then clicks an element e
+     * Hovers over and then clicks an element e, then waits for the page to be ready
+     * <p>
+     * Prefer {@link #click(WebElement, ClickCondition)}, which waits for what the click actually does instead
+     * of a fixed hover time.
+     * </p>
      *
      * @param e     By selector to use
      * @param hover time to hover (in millis)
      */
     public static void click(WebElement e, int hover) {
-        waitForPageReady();
+        click(e, hover, ClickCondition.networkIdle());
+    }
+
+    /**
+     * Clicks an element and waits until the click is complete
+     *
+     * @param selector String selector in format "page_name.element_name"
+     * @param until    what the click waits for
+     * @return true if the element was clicked and the condition met
+     */
+    public static boolean click(String selector, ClickCondition until) {
+        return click(element(selector), until);
+    }
+
+    /**
+     * Clicks an element and waits until the click is complete
+     *
+     * @param selector By selector to use
+     * @param until    what the click waits for
+     * @return true if the element was clicked and the condition met
+     */
+    public static boolean click(By selector, ClickCondition until) {
+        return click(findElement(selector), until);
+    }
+
+    /**
+     * Clicks an element and waits until the click is complete, e.g.
+     * <br><br>click(element("home.remove_link"), ClickCondition.elementAppears(element("delete_users.remove_confirmation_btn")))
+     *
+     * @param e     element to click
+     * @param until what the click waits for
+     * @return true if the element was clicked and the condition met
+     */
+    public static boolean click(WebElement e, ClickCondition until) {
+        return click(e, 0, until);
+    }
+
+    private static boolean click(WebElement e, int hover, ClickCondition until) {
+        if (ReadinessSync.needsSync())
+            waitForPageReady();
         if (beforeNavigate != null)
             beforeNavigate.run();
         WebDriver driver = MainRunner.getWebDriver();
@@ -769,16 +825,16 @@ public abstract class StepUtils {
             if (e == null) {
                 if (MainRunner.isDebug())
                     System.out.println("-->StepUtils.click(): element null");
-                return;
+                return false;
             } else {
                 try {
                     if (MainRunner.isDebug())
                         System.out.println("-->StepUtils.click(): element not clickable: " + e.getTagName() + ":" + e.getText() + ":" + ex.getMessage());
-                    return;
+                    return false;
                 } catch (org.openqa.selenium.StaleElementReferenceException exc) {
                     if (MainRunner.isDebug())
                         System.out.println("-->StepUtils.click(): element not clickable: " + exc.getMessage());
-                    return;
+                    return false;
                 }
             }
         }
@@ -786,29 +842,59 @@ public abstract class StepUtils {
         actions.moveToElement(e).perform();
         if (hover > 0)
             Utils.threadSleep(hover, null);
+        String mark = until.prepare();
         try {
             actions.click().perform();
+            ReadinessSync.markNavigation();
         } catch (WebDriverException ex) {
             if (MainRunner.isDebug())
                 System.err.println("Error while clicking, trying JS");
             javascriptClick(e);
         }
         closeFFAlert();
-        waitForPageReady();
+        boolean done = until.await(mark, MainRunner.timeout);
+        // the caller said what the click does, lookups need not wait for the page again
+        if (done && until.getType() != ClickCondition.Type.NONE)
+            ReadinessSync.markReady();
+
+        if (ie() || firefox())
+            moveAwayFromFlyouts(actions);
+        if (afterNavigate != null)
+            afterNavigate.run();
+        return done;
+    }
 
-        if (ie() || firefox()) {
-            // IE & firefox like to leave the mouse over dropdown menus
-            if (elementPresent("home.open_flyout") || elementPresent("home.my_account_menu")
-                    || elementPresent("home.quickbag_items_list")) {
+    // IE & firefox like to leave the mouse over dropdown menus. A page opts in with a "flyouts" element
+    // (names of its menu elements, comma separated) and a "flyout_move_to" element to move the mouse to.
+    private static void moveAwayFromFlyouts(Actions actions) {
+        String page = currentPage.get();
+        if (page == null)
+            return;
+        List<String> keys = flyoutsByPage.computeIfAbsent(page, StepUtils::findFlyouts);
+        for (String flyout : keys.subList(Math.min(1, keys.size()), keys.size())) {
+            if (elementPresent(flyout)) {
                 try {
-                    actions.moveToElement(findElement(element("home.search_field"))).perform();
+                    actions.moveToElement(findElement(element(keys.get(0)))).perform();
                 } catch (Exception ex) {
                     // ignore
                 }
+                return;
             }
         }
-        if (afterNavigate != null)
-            afterNavigate.run();
+    }
+
+    private static List<String> findFlyouts(String page) {
+        String menus = ElementIndex.get().find(page, "flyouts");
+        String moveTo = ElementIndex.get().find(page, "flyout_move_to");
+        if (menus == null || moveTo == null)
+            return Collections.emptyList();
+        List<String> keys = new ArrayList<>();
+        keys.add(page + "." + moveTo.trim());
+        for (String menu : menus.split(",")) {
+            if (!menu.trim().isEmpty())
+                keys.add(page + "." + menu.trim());
+        }
+        return keys;
     }
 
     /**
@@ -1213,6 +1299,34 @@ public abstract class StepUtils {
         return false;
     }
 
+    /**
+     * Clicks the element if it is displayed on the page and waits until the click is complete
+     *
+     * @param selector String selector in format "page_name.element_name"
+     * @param until    what the click waits for
+     * @return true if element was clicked
+     */
+    public static boolean clickIfPresent(String selector, ClickCondition until) {
+        return clickIfPresent(element(selector), until);
+    }
+
+    /**
+     * Clicks the element if it is displayed on the page and waits until the click is complete
+     *
+     * @param selector By selector to use
+     * @param until    what the click waits for
+     * @return true if element was clicked
+     */
+    public static boolean clickIfPresent(By selector, ClickCondition until) {
+        if (ReadinessSync.needsSync())
+            waitForPageReady();
+        if (elementPresent(selector)) {
+            click(selector, until);
+            return true;
+        }
+        return false;
+    }
+
     /**
      * Checks if element is displayed on the page
      *
@@ -1477,6 +1591,7 @@ public abstract class StepUtils {
             if (!pageURL.startsWith("http")) {
                 if (!(pageURL.matches(".*\\.url$")))
                     pageURL = pageURL + ".url";
+                currentPage.set(pageURL.substring(0, pageURL.length() - ".url".length()));
 
                 String url = PageUtils.findPageData(pageURL);
 
@@ -1491,6 +1606,7 @@ public abstract class StepUtils {
                 }
             } else {
                 link = pageURL;
+                currentPage.remove();
             }
 
             System.out.println("...Loading " + link);
@@ -1498,6 +1614,8 @@ public abstract class StepUtils {
             if (ie() && MainRunner.getExParams("require_authentication") != null
                     && MainRunner.getExParams("require_authentication").equals("true"))
                 MainRunner.authenticationIeInit();
+            ReadinessSync.markNavigation();
+            HarRecorder.page(link);
             MainRunner.getWebDriver().get(link);
             waitForPageReady();
         } catch (Exception ex) {
@@ -1530,39 +1648,37 @@ public abstract class StepUtils {
 
     /**
      * Creates a By selector based on data in a json file
+     * <p>
+     * Locators are compiled once per key by {@link LocatorCache}; whether the page is waited for first is
+     * decided by {@link ReadinessSync}. "||" alternatives are checked together in the page, see
+     * {@link LocatorCache#probe}.
+     * </p>
      *
      * @param elementKey String selector in format "page_name.element_name"
      * @return By selector retrieved from json file
      */
     public static By element(String elementKey) {
-        waitForPageReady();
-        PageElement elementData = new PageElement(elementKey);
-        String element_value = PageUtils.findPageElementValue(elementData);
-        if (element_value == null)
+        if (ReadinessSync.needsSync())
+            waitForPageReady();
+        List<LocatorCache.Locator> locators = LocatorCache.get(elementKey);
+        if (locators == null)
             return null;
-
-        By first = null;
-        String[] values = element_value.split("\\|\\|");
-        for (String retval : values) {
-            elementData.parseResult(retval);
-            if (elementData.elementValue == null)
-                Assert.fail("ERROR - UI: element '" + elementKey + "' is not defined.");
-            if (elementData.elementLocator == null)
-                Assert.fail("ERROR - UI: element locator is not recognizable.");
-            By el = findLocatorMethod(elementData.elementLocator, elementData.elementValue);
-            if (values.length == 1)
-                return el;
-
-            if (first == null)
-                first = el;
+        if (locators.size() == 1)
+            return locators.get(0).getBy();
+
+        int index = LocatorCache.probe(elementKey, locators);
+        if (index >= 0)
+            return locators.get(index).getBy();
+        // nothing displayed yet, look them up one by one
+        for (LocatorCache.Locator locator : LocatorCache.ordered(elementKey, locators)) {
             try {
-                if (StepUtils.findElement(el).isDisplayed())
-                    return el;
+                if (StepUtils.findElement(locator.getBy()).isDisplayed())
+                    return locator.getBy();
             } catch (Exception e) {
                 // try the next one (if it exists)
             }
         }
-        return first;
+        return locators.get(0).getBy();
     }
 
     /**
@@ -1583,30 +1699,21 @@ public abstract class StepUtils {
      * @return By selector built using json file and parameters
      */
     public static By paramElement(String elementKey, String... params) {
-        waitForPageReady();
-        PageElement elementData = new PageElement(elementKey);
-        String element_value = PageUtils.findPageElementValue(elementData);
-        if (element_value == null)
+        if (ReadinessSync.needsSync())
+            waitForPageReady();
+        List<LocatorCache.Locator> locators = LocatorCache.get(elementKey);
+        if (locators == null)
             return null;
 
-        By first = null;
-
-        for (String retval : element_value.split("\\|\\|")) {
-            elementData.parseResult(retval);
-            if (elementData.elementValue == null)
-                Assert.fail("ERROR - UI: element '" + elementKey + "' is not defined.");
-            if (elementData.elementLocator == null)
-                Assert.fail("ERROR - UI: element locator is not recognizable.");
-            String param_value = elementData.elementValue;
-            int index = 1;
-            for (String param : params) {
-                param_value = param_value.replace("{arg" + Integer.toString(index) + "}", param);
-                // System.out.println("Param element: (" + param + "): " + param_value);
-                index++;
-            }
-            By el = findLocatorMethod(elementData.elementLocator, param_value);
-            if (first == null)
-                first = el;
+        if (locators.size() > 1) {
+            int index = LocatorCache.probe(elementKey, locators, params);
+            if (index >= 0)
+                return locators.get(index).getBy(params);
+        }
+        // nothing displayed yet, look them up one by one
+        By first = locators.get(0).getBy(params);
+        for (LocatorCache.Locator locator : LocatorCache.ordered(elementKey, locators)) {
+            By el = locator.getBy(params);
             try {
                 if (StepUtils.findElement(el).isDisplayed()) {
                     return el;
@@ -1661,6 +1768,7 @@ public abstract class StepUtils {
         ArrayList<String> newTab = new ArrayList<>(MainRunner.getWebDriver().getWindowHandles());
         if (newTab.size() > index) {
             MainRunner.getWebDriver().switchTo().window(newTab.get(index));
+            ReadinessSync.markNavigation();
         }
         return MainRunner.getWebDriver();
     }
@@ -1674,6 +1782,7 @@ public abstract class StepUtils {
         if (newTab.size() > 1) {
             driver.close();
             driver.switchTo().window(newTab.get(0));
+            ReadinessSync.markNavigation();
         }
     }
 
@@ -1758,6 +1867,44 @@ public abstract class StepUtils {
         }
     }
 
+    /**
+     * Reads a whole table in one script call, record ids are taken from the first column
+     *
+     * @param selector String selector in format "page_name.element_name" of the table
+     * @return table snapshot
+     */
+    public static TableSnapshot tableSnapshot(String selector) {
+        return tableSnapshot(element(selector), 0);
+    }
+
+    /**
+     * Reads a whole table in one script call, record ids are taken from the first column
+     *
+     * @param table By selector of the table or of an element containing it
+     * @return table snapshot
+     */
+    public static TableSnapshot tableSnapshot(By table) {
+        return tableSnapshot(table, 0);
+    }
+
+    /**
+     * Reads a whole table in one script call
+     *
+     * @param table    By selector of the table or of an element containing it
+     * @param idColumn index of the column holding the record ids
+     * @return table snapshot
+     */
+    public static TableSnapshot tableSnapshot(By table, int idColumn) {
+        WebElement element = findElement(table);
+        if (element == null)
+            Assert.fail("table not found: " + table);
+        TableSnapshot snapshot = TableSnapshot.fromScriptResult(
+                execJavascript(TableSnapshot.SNAPSHOT_SCRIPT, element), idColumn);
+        if (snapshot == null)
+            Assert.fail("unable to read table: " + table);
+        return snapshot;
+    }
+
     /**
      * Gets the text of an element or "null" if element does not exist
      *
@@ -1785,13 +1932,24 @@ public abstract class StepUtils {
      * @return true if stop was successful
      */
     public static boolean stopPageLoad() {
+        return stopPageLoad(MainRunner.getWebDriver());
+    }
+
+    /**
+     * Stops any active loading on the page of a given browser, e.g. from a watchdog thread
+     *
+     * @param driver browser to stop
+     * @return true if stop was successful
+     */
+    public static boolean stopPageLoad(WebDriver driver) {
         System.out.print("--> stopPageLoad():");
         try {
-            execJavascript("window.stop()");
+            JavascriptExecutor js = (JavascriptExecutor) driver;
+            js.executeScript("window.stop()");
             Utils.threadSleep(500, null);
-            String res = execJavascript("return document.readyState").toString();
+            Object res = js.executeScript("return document.readyState");
             System.out.print(res);
-            return res != null && res.equals("complete");
+            return "complete".equals(res);
         } catch (Exception ex) {
             System.out.print(ex.getMessage());
         }
@@ -1812,10 +1970,35 @@ public abstract class StepUtils {
      * @return true if page is loaded and contains specified text
      */
     public static boolean waitForPageReady(final String containText) {
+        Boolean noError = PageReadiness.waitForReady(containText, !safari());
+        if (noError == null)
+            noError = pollPageReady(containText);
+        ReadinessSync.markReady();
+        return noError;
+    }
+
+    /**
+     * Polls readyState and jQuery.active until the page is loaded, used when the page cannot be instrumented
+     *
+     * @param containText text to look for in page html
+     * @return true if the page is not an error page
+     */
+    private static boolean pollPageReady(final String containText) {
         int waitTime = MainRunner.timeout;
         try {
             new WebDriverWait(MainRunner.getWebDriver(), waitTime).until((WebDriver wDriver) -> {
-                return ajaxInactive() && isPageLoaded(containText);
+                // readyState, jQuery.active and the page text in one round-trip
+                ScriptExecutor.Batch batch = scriptBatch()
+                        .add("state", ScriptExecutor.READY_STATE)
+                        .add("ajax", ScriptExecutor.JQUERY_ACTIVE);
+                if (containText != null)
+                    batch.add("text", ScriptExecutor.PAGE_TEXT);
+                ScriptExecutor.Result result = batch.run();
+                String state = result.getString("state");
+                boolean ready = result.getLong("ajax", 0) == 0 && state != null && state.matches("complete|loaded|interactive");
+                if (containText != null)
+                    ready &= result.getString("text") != null && result.getString("text").contains(containText);
+                return ready;
             });
         } catch (Exception ex) {
             System.out.println("page has exceeded wait time: " + waitTime);
@@ -1854,7 +2037,6 @@ public abstract class StepUtils {
     public static boolean ajaxInactive() {
         Long queries = (Long) execJavascript("return jQuery.active;");
         //System.out.print("." + queries + " AJAX");
-        String url = MainRunner.getWebDriver().getCurrentUrl();
         return queries == 0;
     }
 
@@ -1892,19 +2074,7 @@ public abstract class StepUtils {
      * @param fileName file name to save screenshot as
      */
     public static void browserScreenCapture(String fileName) {
-        File fimg = new File(MainRunner.logs + fileName);
-        try {
-            File scrFile = ((TakesScreenshot) MainRunner.getWebDriver()).getScreenshotAs(OutputType.FILE);
-            scrFile.renameTo(fimg);
-        } catch (Exception ex) {
-            ex.printStackTrace();
-            try {
-                Utils.desktopCapture(new FileOutputStream(fimg));
-            } catch (Exception e) {
-                e.printStackTrace();
-                System.out.println("Cannot desktop capture.");
-            }
-        }
+        ScreenshotPipeline.await(Collections.singletonList(ScreenshotPipeline.capture(fileName)), MainRunner.timeout * 1000L);
     }
 
     /**
@@ -1936,37 +2106,32 @@ public abstract class StepUtils {
     }
 
     /**
-     * Executes javascript code using given arguments
+     * Executes javascript code using given arguments in the browser of the current thread
      *
      * @param script String containing JS code
      * @param args   Any arguments to JS code in script
-     * @return returned value of JS code (if any)
+     * @return returned value of JS code (if any), "" if the script failed
      */
-    public static synchronized Object execJavascript(String script, Object... args) {
-        WebDriver wd = MainRunner.getWebDriver();
-        JavascriptExecutor scriptExe = ((JavascriptExecutor) wd);
+    public static Object execJavascript(String script, Object... args) {
         try {
-            //System.err.print("$");
-            //System.out.print("StepUtils.execJavascript():" + script + ":");
-            //utils.ThreadWatchDog twd = new utils.ThreadWatchDog(Thread.currentThread(), 5*1000l, "StepUtils.execJavascript()", () -> new DBRunnable(new Object[]{wd}){
-            //    public void run(){
-            //        System.err.println("StepUtils.execJavascript() has timeout:");
-            //        try{
-            //            ((WebDriver)this.m_params[0]).close();
-            //        }catch(Exception ex){}
-            //    }
-            //});
-            Object ret = scriptExe.executeScript(script, args);
-            //twd.interrupt();
-            return ret;
+            return ScriptExecutor.of(MainRunner.getWebDriver()).execute(script, args);
         } catch (Exception ex) {
+            if (MainRunner.isDebug())
+                System.err.println("-->StepUtils.execJavascript(): " + ex.getMessage());
             return "";
-        } //finally {
-        //System.err.print("^");
-        //}
+        }
     }
 
-    private static By findLocatorMethod(String locator, String value) {
+    /**
+     * Starts a batch of scripts to run in the browser of the current thread in one call
+     *
+     * @return empty batch, see {@link ScriptExecutor.Batch}
+     */
+    public static ScriptExecutor.Batch scriptBatch() {
+        return ScriptExecutor.of(MainRunner.getWebDriver()).batch();
+    }
+
+    static By findLocatorMethod(String locator, String value) {
         switch (locator) {
             case "id":
                 return By.id(value);
@@ -2012,11 +2177,12 @@ public abstract class StepUtils {
      */
     public void init(Scenario s) {
         this.scenario = (ScenarioImpl) s;
-        MainRunner.URLStack = new ArrayList<>();
+        MainRunner.resetURLStack();
     }
 
     /**
-     * Gets the browsermob har
+     * Gets the browsermob har. Finished entries are moved to logs/har/ by {@link HarRecorder}, so the har
+     * only holds the entries of the last second or so.
      *
      * @return browsermob har
      */
@@ -2155,18 +2321,21 @@ public abstract class StepUtils {
     }
 
     /**
-     * A class for creating and managing singleton scenarios and steps
+     * A class for creating and managing singleton scenarios and steps.
+     * <p>
+     * Runs a scenario or step alone, tagged scenarios of this run and of the other runs on the machine wait
+     * for it. "@singleton" scenarios share one lock, "@singleton_group" scenarios only wait for the scenarios
+     * of the same group. Singleton steps lock per step name: two different singleton steps may now run at the
+     * same time, only runs of the same step wait for each other. Steps that must exclude each other have to use
+     * the same name.
+     * </p>
      */
-    public static class SingletonScenario extends Thread {
+    public static class SingletonScenario {
         private final static String TAG_SINGLETON = "@singleton";
         private static final long TIMEOUT_DURATION = 20 * 50 * 60 * 1000;
-        private static final int PORT_SCENARIO = 9001;
-        private static final int PORT_STEP = 9002;
-        private static SingletonScenario m_singletonStep;
-        private Scenario scenario;
+        private static final ThreadLocal<SingletonScenario> m_singletonStep = new ThreadLocal<>();
+        private final List<LockService.Lock> locks = new ArrayList<>();
         private String lockName;
-        private int lockType = PORT_SCENARIO;
-        private ServerSocket lockSocket;
 
         /**
          * Creates a singleton scenario
@@ -2175,14 +2344,18 @@ public abstract class StepUtils {
          * @throws Exception
          */
         public SingletonScenario(Scenario scenario) throws Exception {
-            this.scenario = scenario;
-            this.lockName = this.scenario.getName();
-            if (firefox() ||
-                    !this.scenario.getSourceTagNames().contains(TAG_SINGLETON))
+            this.lockName = scenario.getName();
+            if (firefox())
                 return;
-
-            this.start();
-            this.join();
+            // sorted so scenarios with several groups always lock in the same order
+            List<String> groups = scenario.getSourceTagNames().stream()
+                    .filter(tag -> tag.equals(TAG_SINGLETON) || tag.startsWith(TAG_SINGLETON + "_"))
+                    .map(tag -> tag.substring(1))
+                    .sorted()
+                    .distinct()
+                    .collect(Collectors.toList());
+            for (String group : groups)
+                this.lock(group, "SCENARIO");
         }
 
         /**
@@ -2193,19 +2366,17 @@ public abstract class StepUtils {
          */
         public SingletonScenario(String stepName) throws Exception {
             this.lockName = stepName;
-            this.lockType = PORT_STEP;
-            this.start();
-            this.join();
+            this.lock("step_" + stepName, "STEP");
         }
 
         /**
-         * Creates a lock for a single step
+         * Creates a lock for a single step, only runs of a step with the same name wait for it
          *
          * @param stepName name of step to lock
          */
         public static void createSteplock(String stepName) {
             try {
-                m_singletonStep = new SingletonScenario(stepName);
+                m_singletonStep.set(new SingletonScenario(stepName));
             } catch (Exception e) {
                 System.err.println("-->Cannot create step singleton");
             }
@@ -2215,48 +2386,31 @@ public abstract class StepUtils {
          * Releases the current step lock
          */
         public static void releaseSteplock() {
-            if (m_singletonStep != null)
-                m_singletonStep.release();
+            SingletonScenario step = m_singletonStep.get();
+            m_singletonStep.remove();
+            if (step != null)
+                step.release();
         }
 
-        /**
-         * Runs the current singleton scenario
-         */
-        public void run() {
-            long ts = System.currentTimeMillis();
-            boolean running;
-            while (running = (System.currentTimeMillis() - ts < TIMEOUT_DURATION)) {
-                try {
-                    lockSocket = new ServerSocket(lockType);
-                    if (lockType == PORT_SCENARIO)
-                        System.err.println("...SingletonScenario: SCENARIO locked: " + this.lockName);
-                    else
-                        System.err.println("...SingletonScenario: STEP locked: " + this.lockName);
-                    break;
-                } catch (Exception ex) {
-                    //ignore
-                }
-                Utils.threadSleep(10 * 1000, "...SingletonScenario:waiting for lock:" + this.lockName + "...");
+        private void lock(String name, String type) {
+            LockService.Lock lock = LockService.acquire(name, TIMEOUT_DURATION);
+            if (lock == null) {
+                System.err.println("-->Exhausted SingletonScenario:waiting for lock:" + name + ":" + Utils.toDuration(TIMEOUT_DURATION));
+                return;
             }
-            if (!running)
-                System.err.println("-->Exhausted SingletonScenario:waiting for lock:" + Utils.toDuration(TIMEOUT_DURATION));
+            this.locks.add(lock);
+            System.err.println("...SingletonScenario: " + type + " locked: " + this.lockName + " (" + name + ")");
         }
 
         /**
          * Releases the current singleton scenario
          */
         public void release() {
-            try {
-                if (this.lockSocket != null)
-                    this.lockSocket.close();
-                else
-                    return;
-
-                if (this.isAlive())
-                    this.interrupt();
-            } catch (Exception ex) {
-                ex.printStackTrace();
-            }
+            if (this.locks.isEmpty())
+                return;
+            for (int i = this.locks.size() - 1; i >= 0; i--)
+                this.locks.get(i).release();
+            this.locks.clear();
             System.err.println("...SingletonScenario: lock is released: " + this.lockName);
         }
     }
@@ -0,0 +1,224 @@
+package db.framework.utils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Text content of an html table read in one script call by {@link StepUtils#tableSnapshot(org.openqa.selenium.By)}.
+ * <p>
+ * Rows are the body rows of the table with at least one td cell. A body row made only of th cells is a
+ * header row, used as headers when the table has no thead. Cells hold the trimmed visible text. The record
+ * id of a row is the text of its id column (the first one by default). The snapshot does not change when the
+ * page changes, take a new one after any action on the table.
+ * </p>
+ */
+public class TableSnapshot {
+    /**
+     * Reads the header and body cells of the table given as first argument, or of the first table inside it
+     */
+    static final String SNAPSHOT_SCRIPT =
+            "var t = arguments[0];" +
+            "if (t && t.tagName !== 'TABLE') t = t.querySelector('table');" +
+            "if (!t) return null;" +
+            "var text = function (c) { return (c.innerText !== undefined ? c.innerText : c.textContent).trim(); };" +
+            "var cells = function (r) { var out = []; for (var i = 0; i < r.cells.length; i++) out.push(text(r.cells[i])); return out; };" +
+            "var headers = t.tHead && t.tHead.rows.length ? cells(t.tHead.rows[0]) : null;" +
+            "var rows = [];" +
+            "var bodies = t.tBodies.length ? t.tBodies : [t];" +
+            "for (var b = 0; b < bodies.length; b++)" +
+            "  for (var r = 0; r < bodies[b].rows.length; r++) {" +
+            "    var row = bodies[b].rows[r];" +
+            "    if (row.parentNode === t.tHead || row.parentNode === t.tFoot) continue;" +
+            "    if (!Array.prototype.some.call(row.cells, function (c) { return c.tagName === 'TD'; })) {" +
+            "      if (!headers) headers = cells(row);" +
+            "      continue;" +
+            "    }" +
+            "    rows.push(cells(row));" +
+            "  }" +
+            "return {headers: headers || [], rows: rows};";
+
+    private final List<String> headers;
+    private final List<List<String>> rows;
+    private final int idColumn;
+    private Map<String, Integer> rowsById;
+
+    /**
+     * Creates a snapshot
+     *
+     * @param headers  header texts, may be empty
+     * @param rows     cell texts per body row
+     * @param idColumn index of the column holding the record id
+     */
+    public TableSnapshot(List<String> headers, List<List<String>> rows, int idColumn) {
+        this.headers = Collections.unmodifiableList(new ArrayList<>(headers));
+        List<List<String>> copy = new ArrayList<>(rows.size());
+        for (List<String> row : rows)
+            copy.add(Collections.unmodifiableList(new ArrayList<>(row)));
+        this.rows = Collections.unmodifiableList(copy);
+        this.idColumn = idColumn;
+    }
+
+    /**
+     * Creates a snapshot from the result of {@link #SNAPSHOT_SCRIPT}
+     *
+     * @param result   script result
+     * @param idColumn index of the column holding the record id
+     * @return snapshot or null if the result is not a table
+     */
+    static TableSnapshot fromScriptResult(Object result, int idColumn) {
+        if (!(result instanceof Map))
+            return null;
+        Map<?, ?> map = (Map<?, ?>) result;
+        List<List<String>> rows = new ArrayList<>();
+        for (Object row : asList(map.get("rows")))
+            rows.add(toStrings(asList(row)));
+        return new TableSnapshot(toStrings(asList(map.get("headers"))), rows, idColumn);
+    }
+
+    public List<String> getHeaders() {
+        return headers;
+    }
+
+    public List<List<String>> getRows() {
+        return rows;
+    }
+
+    public int getRowCount() {
+        return rows.size();
+    }
+
+    /**
+     * Gets the cells of a row
+     *
+     * @param row row index
+     * @return cell texts
+     */
+    public List<String> getRow(int row) {
+        return rows.get(row);
+    }
+
+    /**
+     * Gets the text of a cell
+     *
+     * @param row    row index
+     * @param column column index
+     * @return cell text or "" if the row has no such cell
+     */
+    public String getCell(int row, int column) {
+        List<String> cells = rows.get(row);
+        return column < cells.size() ? cells.get(column) : "";
+    }
+
+    /**
+     * Gets the index of a column by its header text, ignoring case
+     *
+     * @param header header text
+     * @return column index or -1 if not found
+     */
+    public int getColumnIndex(String header) {
+        for (int i = 0; i < headers.size(); i++) {
+            if (headers.get(i).equalsIgnoreCase(header))
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Gets all cells of a column
+     *
+     * @param column column index
+     * @return cell texts, "" for rows without the column
+     */
+    public List<String> getColumn(int column) {
+        List<String> values = new ArrayList<>(rows.size());
+        for (int i = 0; i < rows.size(); i++)
+            values.add(getCell(i, column));
+        return values;
+    }
+
+    /**
+     * Gets the record id of a row
+     *
+     * @param row row index
+     * @return text of the id column
+     */
+    public String getRecordId(int row) {
+        return getCell(row, idColumn);
+    }
+
+    /**
+     * Gets the record ids of all rows
+     *
+     * @return ids in row order
+     */
+    public List<String> getRecordIds() {
+        return getColumn(idColumn);
+    }
+
+    /**
+     * Gets the non-empty cells of a row other than the id column, e.g. without action link cells
+     *
+     * @param row row index
+     * @return cell texts
+     */
+    public List<String> getValues(int row) {
+        List<String> values = new ArrayList<>();
+        List<String> cells = rows.get(row);
+        for (int i = 0; i < cells.size(); i++) {
+            if (i != idColumn && !cells.get(i).isEmpty())
+                values.add(cells.get(i));
+        }
+        return values;
+    }
+
+    /**
+     * Finds the row of a record
+     *
+     * @param id record id
+     * @return row index or -1 if not found
+     */
+    public int findRowById(String id) {
+        if (rowsById == null) {
+            Map<String, Integer> index = new HashMap<>();
+            for (int i = rows.size() - 1; i >= 0; i--)
+                index.put(getRecordId(i), i);
+            rowsById = index;
+        }
+        Integer row = rowsById.get(id);
+        return row == null ? -1 : row;
+    }
+
+    /**
+     * Finds the first row containing all the given values
+     *
+     * @param values cell texts to look for
+     * @return row index or -1 if not found
+     */
+    public int findRow(Collection<String> values) {
+        for (int i = 0; i < rows.size(); i++) {
+            if (rows.get(i).containsAll(values))
+                return i;
+        }
+        return -1;
+    }
+
+    @Override
+    public String toString() {
+        return "TableSnapshot" + headers + rows;
+    }
+
+    private static List<?> asList(Object value) {
+        return value instanceof List ? (List<?>) value : Collections.emptyList();
+    }
+
+    private static List<String> toStrings(List<?> values) {
+        List<String> strings = new ArrayList<>(values.size());
+        for (Object value : values)
+            strings.add(value == null ? "" : value.toString());
+        return strings;
+    }
+}
@@ -35,6 +35,7 @@ import org.apache.http.protocol.HttpContext;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.junit.Assert;
+import org.openqa.selenium.WebDriver;
 
 import javax.imageio.ImageIO;
 import java.awt.*;
@@ -121,7 +122,7 @@ public class Utils {
             return msg;
         } finally {
             if (pd != null)
-                pd.interrupt();
+                pd.cancel();
             if (p != null)
                 p.destroy();
             //System.out.println("-->" + (System.currentTimeMillis() - ts) + ":" + cmd);
@@ -208,9 +209,22 @@ public class Utils {
      * @return SHA key
      */
     public static String getScenarioShaKey(String feature, String scenario) {
+        return getScenarioShaKey(feature, scenario, true);
+    }
+
+    /**
+     * Returns the SHA key of a feature
+     *
+     * @param feature  feature file path
+     * @param scenario scenario name
+     * @param log      whether to print the key to stderr
+     * @return SHA key
+     */
+    public static String getScenarioShaKey(String feature, String scenario, boolean log) {
         String path = (feature + scenario).replaceAll("\\s", "");
         String key = DigestUtils.sha256Hex(path);
-        System.err.println("...key generation:" + path + ":" + key);
+        if (log)
+            System.err.println("...key generation:" + path + ":" + key);
         return key;
     }
 
@@ -893,22 +907,21 @@ public class Utils {
 
     }
 
-    public static class PageHangWatchDog extends Thread {
+    /**
+     * Stops the page load of a browser whose navigation takes more than a minute.
+     * Pending navigations are checked every 5 seconds on the {@link WatchDogScheduler}.
+     */
+    public static class PageHangWatchDog {
         private final static long TIMEOUT = 60 * 1000L;
-        private static PageHangWatchDog m_PageHangWatchDog;
-        private static boolean m_pause;
-        private String m_url;
-        private long m_ts;
-
-        private PageHangWatchDog() {
-            System.err.println("--> Start:PageHangWatchDog:" + new Date());
-            this.reset(MainRunner.getWebDriver().getCurrentUrl());
-            this.start();
-        }
-
-        public static void init() {
-            if (m_PageHangWatchDog == null) {
-                m_PageHangWatchDog = new PageHangWatchDog();
+        private final static long INTERVAL = 5000L;
+        private static final Map<WebDriver, PageState> m_pages = new WeakHashMap<>();
+        private static WatchDogScheduler.Watch m_watch;
+        private static volatile boolean m_pause;
+
+        public static synchronized void init() {
+            if (m_watch == null) {
+                System.err.println("--> Start:PageHangWatchDog:" + new Date());
+                m_watch = WatchDogScheduler.scheduleAtFixedRate("PageHangWatchDog", INTERVAL, INTERVAL, PageHangWatchDog::check);
             }
         }
 
@@ -916,70 +929,116 @@ public class Utils {
             m_pause = ispause;
         }
 
-        private void reset(String url) {
-            this.m_ts = System.currentTimeMillis();
-            if (url != null)
-                this.m_url = url;
+        /**
+         * Records that a browser started loading a page
+         *
+         * @param driver browser
+         * @param url    url being loaded
+         */
+        public static void start(WebDriver driver, String url) {
+            if (driver == null || url == null)
+                return;
+            synchronized (m_pages) {
+                m_pages.put(driver, new PageState(url));
+            }
         }
 
-        public void run() {
-            Thread.currentThread().setPriority(MAX_PRIORITY);
-            while (true) {
-                //System.err.print("^");
-                try {
-                    if (m_pause)
-                        continue;
-                    //System.err.print("^");
-                    if (!MainRunner.driverInitialized())
-                        continue;
-                    String url = MainRunner.currentURL;
-                    if (url.contains("about:blank"))
+        /**
+         * Records that the page load of a browser ended
+         *
+         * @param driver browser
+         */
+        public static void finish(WebDriver driver) {
+            synchronized (m_pages) {
+                m_pages.remove(driver);
+            }
+        }
+
+        private static void check() {
+            if (m_pause)
+                return;
+            List<WebDriver> hung = new ArrayList<>();
+            synchronized (m_pages) {
+                long now = System.currentTimeMillis();
+                for (Map.Entry<WebDriver, PageState> entry : m_pages.entrySet()) {
+                    PageState state = entry.getValue();
+                    if (state.url.contains("about:blank") || now - state.ts <= TIMEOUT)
                         continue;
-                    if (url.equals(this.m_url)) {
-                        if (System.currentTimeMillis() - this.m_ts > TIMEOUT) {
-                            System.err.println("--> PageHangWatchDog: timeout at " + this.m_url);
-                            new Thread(StepUtils::stopPageLoad).start();
-                            this.reset(null);
-                        }
-                    } else {
-                        this.reset(url);
-                    }
-                } catch (Throwable ex) {
-                    System.err.println("--> Error:PageHangWatchDog:" + ex.getMessage());
-                    ex.printStackTrace();
-                } finally {
-                    //System.err.print(m_pause ? "|" : "~");
-                    Utils.threadSleep(5000, this.getClass().getSimpleName());
+                    System.err.println("--> PageHangWatchDog: timeout at " + state.url);
+                    hung.add(entry.getKey());
+                    state.reset(state.url);
                 }
             }
+            // the hung browser may not answer, keep the scheduler thread free
+            for (WebDriver driver : hung)
+                new Thread(() -> StepUtils.stopPageLoad(driver), "PageHangWatchDog-stop").start();
+        }
+
+        private static class PageState {
+            private String url;
+            private long ts;
+
+            PageState(String url) {
+                this.reset(url);
+            }
+
+            private void reset(String url) {
+                this.url = url;
+                this.ts = System.currentTimeMillis();
+            }
         }
     }
 
-    public static class ThreadWatchDog extends Thread {
-        private Thread m_thread;
-        private long m_timeout;
-        private String m_name;
-        private Runnable m_callback;
+    /**
+     * Interrupts a thread and runs a callback if it is not cancelled before the timeout
+     */
+    public static class ThreadWatchDog {
+        private final Thread m_thread;
+        private final long m_timeout;
+        private final String m_name;
+        private final Runnable m_callback;
+        private final WatchDogScheduler.Watch m_watch;
+        private boolean m_cancelled;
+        private volatile boolean m_interrupted;
 
         public ThreadWatchDog(Thread th, long timeout, String name, Runnable callback) {
             this.m_thread = th;
             this.m_timeout = timeout;
             this.m_name = name + System.currentTimeMillis();
             this.m_callback = callback;
-            this.start();
+            this.m_watch = WatchDogScheduler.schedule("ThreadWatchDog:" + this.m_name, timeout, this::timeout);
         }
 
-        public void run() {
-            if (Utils.threadSleep(this.m_timeout, "--> ThreadWatchDog.start():" + this.m_name + ":" + this.m_timeout)) {
-                System.err.println("--> ThreadWatchDog.start():" + this.m_name + ":" + this.m_timeout + ": exit normally.");
-                return;
-            }
-            if (this.m_thread != null && this.m_thread.isAlive()) {
-                System.err.println("--> ThreadWatchDog.destroy():" + this.m_name + ":" + this.m_timeout);
-                this.m_thread.interrupt();
+        /**
+         * Cancels the watchdog, it does not interrupt the thread once this returns
+         */
+        public synchronized void cancel() {
+            this.m_cancelled = true;
+            this.m_watch.cancel();
+        }
+
+        /**
+         * Checks if the watchdog interrupted the thread, e.g. to tell its interrupt from another one
+         *
+         * @return true if the timeout was reached and the thread interrupted
+         */
+        public boolean hasInterrupted() {
+            return this.m_interrupted;
+        }
+
+        private void timeout() {
+            synchronized (this) {
+                if (this.m_cancelled)
+                    return;
+                if (this.m_thread != null && this.m_thread.isAlive()) {
+                    System.err.println("--> ThreadWatchDog.destroy():" + this.m_name + ":" + this.m_timeout);
+                    this.m_interrupted = true;
+                    this.m_thread.interrupt();
+                }
             }
+            // the callback may block, keep it off the scheduler thread
             if (this.m_callback != null)
-                m_callback.run();
+                WatchDogScheduler.execute("ThreadWatchDog:" + this.m_name, m_callback);
         }
     }
 
@@ -1031,10 +1090,11 @@ public class Utils {
 
     }
 
-    public static class ProcessWatchDog extends Thread {
-        private Process m_process;
-        private long m_timeout;
-        private String m_name;
+    public static class ProcessWatchDog {
+        private final Process m_process;
+        private final long m_timeout;
+        private final String m_name;
+        private final WatchDogScheduler.Watch m_watch;
 
         /**
          * Creates a watchdog for a process to monitor it for timeouts
@@ -1047,14 +1107,20 @@ public class Utils {
             this.m_process = p;
             this.m_timeout = timeout;
             this.m_name = name + System.currentTimeMillis();
-            this.start();
+            this.m_watch = WatchDogScheduler.schedule("ProcessWatchDog:" + this.m_name, timeout, this::timeout);
+        }
+
+        /**
+         * Cancels the watchdog, call when the process ended
+         */
+        public void cancel() {
+            this.m_watch.cancel();
         }
 
         /**
          * Kills the monitored process if it is still running
          */
-        public void run() {
-            Utils.threadSleep(this.m_timeout, null);
+        private void timeout() {
             if (this.m_process.isAlive()) {
                 System.out.println("--> ProcessWatchDog.destroyForcibly():" + this.m_name + ":" + this.m_timeout);
                 this.m_process.destroyForcibly();
@@ -0,0 +1,185 @@
+package db.framework.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One scheduler thread for all watchdogs: page hangs, thread and process timeouts, abort polling.
+ * <p>
+ * A watch is a one-shot timeout or a periodic check registered with {@link #schedule} or
+ * {@link #scheduleAtFixedRate}. Cancelled watches are removed from the queue right away, so registering a
+ * timeout around every call costs nothing while it does not fire. Actions must be short, a late action
+ * delays every other deadline. Anything that may block (e.g. a browser or HTTP call) is given to
+ * {@link #execute} or registered with {@link #pollAtFixedRate}, both run it on a worker thread.
+ * {@link #getWatches()} lists what is currently watched.
+ * </p>
+ */
+public class WatchDogScheduler {
+    private static final AtomicLong ids = new AtomicLong();
+    private static final Map<Long, Watch> watches = new ConcurrentHashMap<>();
+    private static final ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, r -> {
+        Thread th = new Thread(r, "WatchDogScheduler");
+        th.setDaemon(true);
+        return th;
+    });
+
+    private static final ExecutorService workers = Executors.newCachedThreadPool(r -> {
+        Thread th = new Thread(r, "WatchDogScheduler-worker");
+        th.setDaemon(true);
+        return th;
+    });
+
+    static {
+        scheduler.setRemoveOnCancelPolicy(true);
+        scheduler.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    }
+
+    /**
+     * Runs an action once after a timeout unless the watch is cancelled before
+     *
+     * @param name    what is watched
+     * @param timeout timeout in milliseconds
+     * @param action  action to run on timeout
+     * @return watch to cancel
+     */
+    public static Watch schedule(String name, long timeout, Runnable action) {
+        Watch watch = new Watch(name, timeout, 0);
+        watches.put(watch.id, watch);
+        watch.future = scheduler.schedule(() -> {
+            watches.remove(watch.id);
+            watch.run(action);
+        }, timeout, TimeUnit.MILLISECONDS);
+        return watch;
+    }
+
+    /**
+     * Runs a check periodically until the watch is cancelled. A failing check does not stop the schedule.
+     *
+     * @param name   what is watched
+     * @param delay  delay before the first check in milliseconds
+     * @param period time between checks in milliseconds
+     * @param action check to run
+     * @return watch to cancel
+     */
+    public static Watch scheduleAtFixedRate(String name, long delay, long period, Runnable action) {
+        Watch watch = new Watch(name, delay, period);
+        watches.put(watch.id, watch);
+        watch.future = scheduler.scheduleAtFixedRate(() -> watch.run(action), delay, period, TimeUnit.MILLISECONDS);
+        return watch;
+    }
+
+    /**
+     * Runs a periodic check on a worker thread, for checks that may block. A check still running when the
+     * next one is due is not started twice.
+     *
+     * @param name   what is watched
+     * @param delay  delay before the first check in milliseconds
+     * @param period time between checks in milliseconds
+     * @param action check to run
+     * @return watch to cancel
+     */
+    public static Watch pollAtFixedRate(String name, long delay, long period, Runnable action) {
+        Watch watch = new Watch(name, delay, period);
+        watches.put(watch.id, watch);
+        watch.future = scheduler.scheduleAtFixedRate(() -> {
+            if (watch.busy.compareAndSet(false, true))
+                execute(name, () -> {
+                    try {
+                        action.run();
+                    } finally {
+                        watch.busy.set(false);
+                    }
+                });
+        }, delay, period, TimeUnit.MILLISECONDS);
+        return watch;
+    }
+
+    /**
+     * Runs an action on a worker thread, e.g. the blocking part of a watchdog action
+     *
+     * @param name   what the action is for, used in error messages
+     * @param action action to run
+     */
+    public static void execute(String name, Runnable action) {
+        workers.execute(() -> {
+            try {
+                action.run();
+            } catch (Throwable ex) {
+                System.err.println("--> Error:WatchDogScheduler:" + name + ":" + ex.getMessage());
+                ex.printStackTrace();
+            }
+        });
+    }
+
+    /**
+     * Gets the active watches
+     *
+     * @return one line per watch with its name and time to the next run
+     */
+    public static List<String> getWatches() {
+        List<String> list = new ArrayList<>();
+        for (Watch watch : watches.values())
+            list.add(watch.toString());
+        return list;
+    }
+
+    /**
+     * Handle of a registered watch
+     */
+    public static class Watch {
+        private final long id = ids.incrementAndGet();
+        private final String name;
+        private final long period;
+        private final AtomicBoolean busy = new AtomicBoolean();
+        private volatile ScheduledFuture<?> future;
+
+        Watch(String name, long delay, long period) {
+            this.name = name;
+            this.period = period;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Cancels the watch, a running action is not interrupted
+         */
+        public void cancel() {
+            watches.remove(id);
+            ScheduledFuture<?> f = future;
+            if (f != null)
+                f.cancel(false);
+        }
+
+        public boolean isCancelled() {
+            ScheduledFuture<?> f = future;
+            return f != null && f.isCancelled();
+        }
+
+        private void run(Runnable action) {
+            try {
+                action.run();
+            } catch (Throwable ex) {
+                System.err.println("--> Error:WatchDogScheduler:" + name + ":" + ex.getMessage());
+                ex.printStackTrace();
+            }
+        }
+
+        @Override
+        public String toString() {
+            ScheduledFuture<?> f = future;
+            long next = f == null ? -1 : f.getDelay(TimeUnit.MILLISECONDS);
+            return name + (period > 0 ? " every " + period + " ms" : "") + ", next in " + next + " ms";
+        }
+    }
+}
@@ -1,3 +1,5 @@
+# every scenario starts from an empty users table, they cannot run at the same time
+@serial
 Feature: CRUD Database Testing
 
   Background:
@@ -2,31 +2,46 @@ package db.shared.resources.actions.page_object;
 
 import org.junit.Assert;
 import db.shared.steps.DB_Tester;
+import db.framework.utils.ClickCondition;
 import db.framework.utils.StepUtils;
+import db.framework.utils.TableSnapshot;
+import db.shared.utils.database.models.CustomerService;
+import db.shared.utils.database.utils.RecordReconciler;
 
 import java.util.*;
+import java.util.stream.Stream;
 
 
 public class HomePage extends StepUtils {
 
     public static List<String> inputted_user_info = new ArrayList<>(Arrays.asList(AddUsersPage.addedRecordInfo()));
     public static List<String> updated_user_info = new ArrayList<>(Arrays.asList(EditUsersPage.editedRecordInfo()));
-    public static String record_id;
+    // each parallel worker edits its own record
+    private static final ThreadLocal<String> record_id = new ThreadLocal<>();
+
+    /**
+     * Gets the id of the record picked for update or delete by this thread
+     *
+     * @return record id or null
+     */
+    public static String getRecordId() {
+        return record_id.get();
+    }
 
     public static void transactions(String transaction_type_btn) throws Throwable {
         switch (transaction_type_btn.toLowerCase()) {
             case "add users":
-                clickIfPresent(element("home.add_users_btn"), 2000);
+                clickIfPresent(element("home.add_users_btn"), ClickCondition.elementAppears(element("add_users.create_new_record_btn")));
                 Assert.assertTrue("ERROR: Page is not loaded successfully", waitUntilElementPresent(element("add_users.create_new_record_btn")));
                 break;
             case "update users":
-                record_id = getElementsText(element("home.table_row"), 0);
-                clickIfPresent(element("home.update_link"), 2000);
+                record_id.set(tableSnapshot("home.added_users_tbl").getRecordId(0));
+                clickIfPresent(element("home.update_link"), ClickCondition.elementAppears(element("edit_users.edit_record_btn")));
                 Assert.assertTrue("ERROR: Page is not loaded successfully", waitUntilElementPresent(element("edit_users.edit_record_btn")));
                 break;
             case "delete users":
-                record_id = getElementsText(element("home.table_row"), 0);
-                clickIfPresent(element("home.remove_link"), 2000);
+                record_id.set(tableSnapshot("home.added_users_tbl").getRecordId(0));
+                clickIfPresent(element("home.remove_link"), ClickCondition.elementAppears(element("delete_users.remove_confirmation_btn")));
                 Assert.assertTrue("ERROR: Page is not loaded successfully", waitUntilElementPresent(element("delete_users.remove_confirmation_btn")));
                 break;
             default:
@@ -35,96 +50,75 @@ public class HomePage extends StepUtils {
     }
 
     public static void verifyAddedRecordsWithUI() throws Throwable {
-        List<String> ui_user_info = new ArrayList<String>(Arrays.asList());
-        int recordCount = findElements(element("home.table_row")).size();
-        for (int i = 1; i < recordCount; i++) {
-            String row_value = getElementsText(element("home.table_row"), i);
-            ui_user_info.add(row_value);
-        }
-        ui_user_info.removeAll(Collections.singleton(""));
-        Iterator<String> ui_it = ui_user_info.iterator();
-        Iterator<String> inputted_it = inputted_user_info.iterator();
-        while (ui_it.hasNext()) {
-            String ui_record_value = ui_it.next();
-            while (inputted_it.hasNext()) {
-                String inputted_record_value = inputted_it.next();
-                if (ui_record_value.equals(inputted_record_value)) {
-                    System.out.print("UI verification successfully passed with inputted data values: [ " + ui_record_value + ", " + inputted_record_value + " ]" + "\n" + "");
-                    break;
-                } else {
-                    Assert.fail("UI verification failed for: [ " + ui_record_value + ", " + inputted_record_value + " ]" + "\n" + "");
-                }
-            }
-        }
+        verifyRecords("UI verification with inputted data values", inputted_user_info, uiValues(), true);
     }
 
     public static void removeRecordsFromDB() throws Throwable {
         for (int i = 0; i < findElements(element("home.remove_link")).size(); ) {
-            click(findElements(element("home.remove_link")).get(i), 3000);
-            click(element("delete_users.remove_confirmation_btn"), 3000);
-            click(element("delete_users.back_to_index_btn"), 3000);
+            click(findElements(element("home.remove_link")).get(i), ClickCondition.elementAppears(element("delete_users.remove_confirmation_btn")));
+            click(element("delete_users.remove_confirmation_btn"), ClickCondition.elementAppears(element("delete_users.remove_success_message")));
+            click(element("delete_users.back_to_index_btn"), ClickCondition.navigation());
         }
         Assert.assertTrue("ERROR: Still you have not deleted records left in the data base", getElementsText(element("home.table_row"), 0).contains("Nothing here..."));
     }
 
     public static void verifyAddedRecordsWithDB() throws Throwable {
-        List<String> customerInformationUI = HomePage.inputted_user_info;
-        Iterator<String> ui_it = customerInformationUI.iterator();
-        Iterator<String> db_it = DB_Tester.customerInformationDB.iterator();
-        while (ui_it.hasNext()) {
-            String ui_record_value = ui_it.next();
-            while (db_it.hasNext()) {
-                String db_record_value = db_it.next();
-                if (ui_record_value.equals(db_record_value)) {
-                    System.out.print("Backend verification successfully passed for data values: [ " + ui_record_value + ", " + db_record_value + " ]" + "\n" + "");
-                    break;
-                } else {
-                    Assert.fail("Backend verification failed for: [ " + ui_record_value + ", " + db_record_value + " ]" + "\n" + "");
-                }
-            }
-        }
+        verifyRecords("Backend verification", inputted_user_info,
+                Collections.singletonList(DB_Tester.getCustomerInformationDB().toArray(new String[0])), false);
     }
 
     public static void verifyUpdatedRecordsWithUI() throws Throwable {
-        List<String> ui_user_info = new ArrayList<String>(Arrays.asList());
-        int recordCount = findElements(element("home.table_row")).size();
-        for (int i = 1; i < recordCount; i++) {
-            String row_value = getElementsText(element("home.table_row"), i);
-            ui_user_info.add(row_value);
+        verifyRecords("UI verification with updated data values", updated_user_info, uiValues(), true);
+    }
+
+    public static void verifyEditedRecordsWithDB() throws Throwable {
+        verifyRecords("Backend verification for edited data values", updated_user_info,
+                Collections.singletonList(DB_Tester.getUpdatedCustomerInformationDB().toArray(new String[0])), false);
+    }
+
+    /**
+     * Verifies every record shown in the home page table against the database, by id
+     *
+     * @throws Throwable if the records cannot be read
+     */
+    public static void verifyAllRecordsWithDB() throws Throwable {
+        TableSnapshot table = tableSnapshot("home.added_users_tbl");
+        List<String[]> uiRecords = new ArrayList<>();
+        for (int i = 0; i < table.getRowCount(); i++) {
+            List<String> values = table.getValues(i);
+            // skips the "Nothing here..." row
+            if (values.isEmpty())
+                continue;
+            values.add(0, table.getRecordId(i));
+            uiRecords.add(values.toArray(new String[values.size()]));
         }
-        ui_user_info.removeAll(Collections.singleton(""));
-        Iterator<String> ui_it = ui_user_info.iterator();
-        Iterator<String> updated_it = updated_user_info.iterator();
-        while (ui_it.hasNext()) {
-            String ui_record_value = ui_it.next();
-            while (updated_it.hasNext()) {
-                String updated_record_value = updated_it.next();
-                if (ui_record_value.equals(updated_record_value)) {
-                    System.out.print("UI verification successfully passed with updated data values: [ " + ui_record_value + ", " + updated_record_value + " ]" + "\n" + "");
-                    break;
-                } else {
-                    Assert.fail("UI verification failed for: [ " + ui_record_value + ", " + updated_record_value + " ]" + "\n" + "");
-                }
-            }
+        RecordReconciler.Report report;
+        try (Stream<String[]> dbRecords = CustomerService.streamCustomerRecords()) {
+            // the table only shows one page of the records
+            report = CustomerService.CUSTOMER_RECORD_RECONCILER.reconcile(uiRecords, dbRecords);
         }
+        if (!report.isClean(true))
+            Assert.fail("Backend verification failed for home page records: " + report);
+        System.out.print("Backend verification successfully passed for " + report.getMatched() + " home page record(s)\n");
     }
 
-    public static void verifyEditedRecordsWithDB() throws Throwable {
-        List<String> editedCustomerInformationUI = HomePage.updated_user_info;
-        Iterator<String> edited_ui_it = editedCustomerInformationUI.iterator();
-        Iterator<String> edited_db_it = DB_Tester.updatedCustomerInformationDB.iterator();
-        while (edited_ui_it.hasNext()) {
-            String edited_ui_record_value = edited_ui_it.next();
-            while (edited_db_it.hasNext()) {
-                String edited_db_record_value = edited_db_it.next();
-                if (edited_ui_record_value.equals(edited_db_record_value)) {
-                    System.out.print("Backend verification successfully passed for edited data values: [ " + edited_ui_record_value + ", " + edited_db_record_value + " ]" + "\n" + "");
-                    break;
-                } else {
-                    Assert.fail("Backend verification failed for: [ " + edited_ui_record_value + ", " + edited_db_record_value + " ]" + "\n" + "");
-                }
-            }
+    // the customer values of every table row, without record id and action links
+    private static List<String[]> uiValues() {
+        TableSnapshot table = tableSnapshot("home.added_users_tbl");
+        List<String[]> rows = new ArrayList<>(table.getRowCount());
+        for (int i = 0; i < table.getRowCount(); i++) {
+            List<String> values = table.getValues(i);
+            rows.add(values.toArray(new String[values.size()]));
         }
+        return rows;
+    }
+
+    private static void verifyRecords(String verification, List<String> expected, List<String[]> actual, boolean ignoreExtra) {
+        RecordReconciler.Report report = CustomerService.CUSTOMER_RECONCILER.reconcile(
+                Collections.singletonList(expected.toArray(new String[expected.size()])), actual);
+        if (!report.isClean(ignoreExtra))
+            Assert.fail(verification + " failed: " + report + "\n");
+        System.out.print(verification + " successfully passed: " + expected + "\n");
     }
 
 }
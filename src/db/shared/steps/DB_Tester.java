@@ -1,5 +1,6 @@
 package db.shared.steps;
 
+import cucumber.api.DataTable;
 import cucumber.api.java.en.And;
 import cucumber.api.java.en.Given;
 import cucumber.api.java.en.Then;
@@ -8,16 +9,35 @@ import org.junit.Assert;
 import db.shared.resources.actions.page_object.AddUsersPage;
 import db.shared.resources.actions.page_object.EditUsersPage;
 import db.shared.resources.actions.page_object.HomePage;
+import db.framework.runner.MainRunner;
+import db.framework.utils.ClickCondition;
 import db.framework.utils.StepUtils;
+import db.shared.utils.Hooks;
 import db.shared.utils.database.models.CustomerService;
+import db.shared.utils.database.utils.DBFixtures;
+import db.shared.utils.database.utils.UserDataGenerator;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
 public class DB_Tester extends StepUtils {
 
-    public static List<String> customerInformationDB;
-    public static List<String> updatedCustomerInformationDB;
+    // scenarios (or features) with this tag, or runs with the "db_cleanup=true" ex_param, truncate the users
+    // table instead of removing the records through the UI
+    private static final String TAG_DB_CLEANUP = "@db_cleanup";
+
+    // per thread, parallel workers run their own scenarios
+    private static final ThreadLocal<List<String>> customerInformationDB = new ThreadLocal<>();
+    private static final ThreadLocal<List<String>> updatedCustomerInformationDB = new ThreadLocal<>();
+
+    public static List<String> getCustomerInformationDB() {
+        return customerInformationDB.get();
+    }
+
+    public static List<String> getUpdatedCustomerInformationDB() {
+        return updatedCustomerInformationDB.get();
+    }
 
     @Given("^I visit the crud site home page$")
     public void I_visit_the_crud_site_home_page() throws Throwable {
@@ -42,14 +62,14 @@ public class DB_Tester extends StepUtils {
                 javascriptClick(element("edit_users.cancel_btn"));
                 break;
             case "delete":
-                click(element("delete_users.remove_confirmation_btn"), 3000);
+                click(element("delete_users.remove_confirmation_btn"), ClickCondition.elementAppears(element("delete_users.remove_success_message")));
                 String success_msg = getElementText(element("delete_users.remove_success_message"));
                 if (success_msg.equals("Success! record was deleted..."))
                     System.out.print("Success! record was deleted...");
                 else {
                     Assert.fail("ERROR-Application: Record was not deleted");
                 }
-                click(element("delete_users.back_to_index_btn"), 3000);
+                click(element("delete_users.back_to_index_btn"), ClickCondition.navigation());
                 Assert.assertTrue("ERROR: Still you have not deleted records left in the data base", getElementsText(element("home.table_row"), 0).contains("Nothing here..."));
                 break;
             default:
@@ -64,19 +84,38 @@ public class DB_Tester extends StepUtils {
 
     @And("^I remove all the initial test data from database$")
     public void I_remove_all_the_initial_test_data_from_database() throws Throwable {
-        if (getElementText(element("home.table_row")).contains("Nothing here...")) {
+        if (Hooks.hasTag(TAG_DB_CLEANUP) || "true".equals(MainRunner.getExParams("db_cleanup"))) {
+            DBFixtures.truncate(CustomerService.USERS_TABLE);
+            visit("home");
+        } else if (getElementText(element("home.table_row")).contains("Nothing here...")) {
             System.out.print("No Records found for delete");
         } else {
             HomePage.removeRecordsFromDB();
         }
     }
 
+    @Given("^the \"([^\"]*)\" table contains:$")
+    public void the_table_contains(String table, DataTable data) throws Throwable {
+        List<List<String>> raw = data.raw();
+        if (raw.isEmpty())
+            Assert.fail("ERROR: No columns given for the \"" + table + "\" table");
+        List<Object[]> rows = new ArrayList<>();
+        for (List<String> row : raw.subList(1, raw.size()))
+            rows.add(row.toArray());
+        DBFixtures.insert(table, raw.get(0), rows);
+    }
+
+    @Given("^I generate (\\d+) users in the database$")
+    public void I_generate_users_in_the_database(long rows) throws Throwable {
+        UserDataGenerator.fromExParams(rows).run();
+    }
+
     @When("^I retrieve added record details from database$")
     public void I_retrieve_added_record_details_from_database() throws Throwable {
         String[] customerInformation = CustomerService.getAddedCustomerInformation();
         if (customerInformation == null)
             Assert.fail("ERROR-DATA: Customer information not available in database!!");
-        customerInformationDB = Arrays.asList(customerInformation);
+        customerInformationDB.set(Arrays.asList(customerInformation));
     }
 
     @Then("^I verify added record values with backend record values$")
@@ -94,7 +133,7 @@ public class DB_Tester extends StepUtils {
         String[] updatedCustomerInformation = CustomerService.getUpdatedCustomerInformation();
         if (updatedCustomerInformation == null)
             Assert.fail("ERROR-DATA: Updated customer information not available in database!!");
-        updatedCustomerInformationDB = Arrays.asList(updatedCustomerInformation);
+        updatedCustomerInformationDB.set(Arrays.asList(updatedCustomerInformation));
     }
 
     @Then("^I verify updated record values with backend record values$")
@@ -102,6 +141,11 @@ public class DB_Tester extends StepUtils {
         HomePage.verifyEditedRecordsWithDB();
     }
 
+    @Then("^I verify the home page records match the database$")
+    public void I_verify_the_home_page_records_match_the_database() throws Throwable {
+        HomePage.verifyAllRecordsWithDB();
+    }
+
     @Then("^I verify whether the record deleted from backend$")
     public void I_verify_whether_the_record_deleted_from_backend() throws Throwable {
         String[] deletedCustomerInformation = CustomerService.verifyRecordDeleted();
@@ -1,31 +1,48 @@
 package db.shared.utils;
 
 import db.framework.utils.StepUtils;
-import db.framework.utils.Utils;
+import db.shared.utils.database.utils.QueryRegistry;
 import org.apache.commons.lang3.RandomStringUtils;
-import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.File;
-import java.io.IOException;
 import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
 
 public abstract class CommonUtils extends StepUtils {
+    private static final String EMAIL_CHARS = "abcdefghijklmnopqrstuvwxyz" + "1234567890";
+    private static final String[] FIRST_NAMES = {"JAMES", "ALEXANDER", "ROBERT", "MICHAEL", "WILLIAM", "DAVID", "RICHARD", "CHARLES", "JOSEPH", "THOMAS", "CHRISTOPHER", "KASUN", "DASUN", "CHANDIKA", "DINUKA", "PAVITHRA", "KOSHILA", "RAJITHA"};
+    private static final String[] LAST_NAMES = {"SMITH", "JOHNSON", "BROWN", "JONES", "MILLER", "GARCIA", "RODRIGUEZ", "ANDERSON", "TAYLOR", "JUNG", "MOORE", "ALWIS", "HETTIARACHCHI", "PERERA", "HERATH", "JAYAWEERA", "RATHNAYAKE"};
+
     public static String generateRandomEmail(int length) {
-        String allowedChars = "abcdefghijklmnopqrstuvwxyz" + "1234567890";
-        String email = RandomStringUtils.random(length, allowedChars);
-        email = email.substring(0, email.length()) + "@gmail.com";
-        return email;
+        return generateRandomEmail(ThreadLocalRandom.current(), length);
+    }
+
+    /**
+     * Generates an email from the given random source, so a seeded source gives reproducible data
+     *
+     * @param random random source
+     * @param length length of the local part
+     * @return email address
+     */
+    public static String generateRandomEmail(Random random, int length) {
+        return RandomStringUtils.random(length, 0, EMAIL_CHARS.length(), false, false, EMAIL_CHARS.toCharArray(), random) + "@gmail.com";
     }
 
     public static String generateRandomFirstName() {
-        String[] first_name_list = {"JAMES", "ALEXANDER", "ROBERT", "MICHAEL", "WILLIAM", "DAVID", "RICHARD", "CHARLES", "JOSEPH", "THOMAS", "CHRISTOPHER", "KASUN", "DASUN", "CHANDIKA", "DINUKA", "PAVITHRA", "KOSHILA", "RAJITHA"};
-        return first_name_list[new Random().nextInt(first_name_list.length)];
+        return generateRandomFirstName(ThreadLocalRandom.current());
+    }
+
+    public static String generateRandomFirstName(Random random) {
+        return FIRST_NAMES[random.nextInt(FIRST_NAMES.length)];
     }
 
     public static String generateRandomLastName() {
-        String[] last_name_list = {"SMITH", "JOHNSON", "BROWN", "JONES", "MILLER", "GARCIA", "RODRIGUEZ", "ANDERSON", "TAYLOR", "JUNG", "MOORE", "ALWIS", "HETTIARACHCHI", "PERERA", "HERATH", "JAYAWEERA", "RATHNAYAKE"};
-        return last_name_list[new Random().nextInt(last_name_list.length)];
+        return generateRandomLastName(ThreadLocalRandom.current());
+    }
+
+    public static String generateRandomLastName(Random random) {
+        return LAST_NAMES[random.nextInt(LAST_NAMES.length)];
     }
 
     public static String generateRandomMonth() {
@@ -58,13 +75,16 @@ public abstract class CommonUtils extends StepUtils {
     }
 
     public static String generateRandomPhoneNumber() {
+        return generateRandomPhoneNumber(ThreadLocalRandom.current());
+    }
+
+    public static String generateRandomPhoneNumber(Random random) {
         int length = 10;
         char[] digits = new char[length];
         // Make sure the leading digit isn't 0.
-        Random random_no = new Random();
-        digits[0] = (char) ('1' + random_no.nextInt(9));
+        digits[0] = (char) ('1' + random.nextInt(9));
         for (int i = 1; i < length; i++) {
-            digits[i] = (char) ('0' + random_no.nextInt(10));
+            digits[i] = (char) ('0' + random.nextInt(10));
         }
         return new String(digits);
     }
@@ -78,22 +98,13 @@ public abstract class CommonUtils extends StepUtils {
 
     /**
      * Method to return SQL Queries
+     * <p>
+     * Served from the preloaded {@link QueryRegistry} catalog, queries.json is not read again per call.
+     * </p>
      *
      * @return SQL queries as json object
      */
     public static JSONObject getSqlQueries() {
-
-        File queries = getResourceFile("queries.json");
-        JSONObject jsonObject = null;
-
-        try {
-            String jsonTxt = Utils.readTextFile(queries);
-            jsonObject = new JSONObject(jsonTxt);
-        } catch (IOException | JSONException e) {
-            e.printStackTrace();
-        }
-
-        return jsonObject;
-
+        return QueryRegistry.getSqlQueries();
     }
 }
\ No newline at end of file
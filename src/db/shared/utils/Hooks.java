@@ -4,17 +4,26 @@ import cucumber.api.Scenario;
 import cucumber.api.java.After;
 import cucumber.api.java.Before;
 import db.framework.runner.MainRunner;
+import db.framework.runner.ScenarioScheduler;
+import db.framework.utils.HarRecorder;
 import db.framework.utils.RunFeature;
 import db.framework.utils.StepUtils;
 import db.framework.utils.Utils;
 import gherkin.formatter.model.Result;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Map;
 
 public class Hooks extends StepUtils {
 
+    private static final ThreadLocal<Collection<String>> scenarioTags = ThreadLocal.withInitial(Collections::emptyList);
+
     private SingletonScenario singletonScenario;
     private String resetBrowser = MainRunner.getExParams("reset_browser");
     private long scenarioStartTime;
+    private String scenarioId;
     private long stepStartTime;
 
     private Map getScenarioInfo(Scenario scenario) {
@@ -29,16 +38,29 @@ public class Hooks extends StepUtils {
         return null;
     }
 
+    /**
+     * Checks if the running scenario (or its feature) has a tag
+     *
+     * @param tag tag including the leading '@'
+     * @return true if the scenario is tagged
+     */
+    public static boolean hasTag(String tag) {
+        return scenarioTags.get().contains(tag);
+    }
+
     @Before
     public void beforeScenario(Scenario scenario) {
-        if (RunFeature.checkAborted()) {
+        if (RunFeature.isAborted()) {
             System.exit(-1);
         }
         // make sure driver is initialized
         MainRunner.getWebDriver();
 
         scenarioStartTime = System.currentTimeMillis();
+        scenarioId = scenario.getId();
+        scenarioTags.set(Collections.unmodifiableList(new ArrayList<>(scenario.getSourceTagNames())));
         this.init(scenario);
+        HarRecorder.start(scenario.getName());
         Map sinfo = getScenarioInfo(scenario);
         String line = "";
         if (sinfo != null)
@@ -71,9 +93,12 @@ public class Hooks extends StepUtils {
                 if (errorMsg.startsWith("db.framework.utils.StepUtils$SkipException:"))
                     this.clearStepResult(-1);
             }
-            System.out.println("\n--> DURATION: " + Utils.toDuration(System.currentTimeMillis() - scenarioStartTime) + "\n\n\n\n");
+            long duration = System.currentTimeMillis() - scenarioStartTime;
+            ScenarioScheduler.record(scenarioId, duration);
+            System.out.println("\n--> DURATION: " + Utils.toDuration(duration) + "\n\n\n\n");
 
         } finally {
+            HarRecorder.stop();
             if (resetBrowser != null && resetBrowser.matches("true|t")) {
                 if (MainRunner.isDebug())
                     MainRunner.resetDriver(this.isScenarioPassed());
@@ -85,6 +110,7 @@ public class Hooks extends StepUtils {
                 singletonScenario.release();
                 singletonScenario = null;
             }
+            scenarioTags.remove();
         }
     }
 
@@ -2,14 +2,31 @@ package db.shared.utils.database.models;
 
 import db.framework.utils.StepUtils;
 import db.shared.resources.actions.page_object.HomePage;
-import db.shared.utils.CommonUtils;
-import db.shared.utils.database.utils.DBUtilities;
+import db.shared.utils.database.utils.ColumnProjection;
+import db.shared.utils.database.utils.QueryExecutor;
+import db.shared.utils.database.utils.QueryRegistry;
+import db.shared.utils.database.utils.RecordReconciler;
+import db.shared.utils.database.utils.RowMapper;
 
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.stream.Stream;
 
 public class CustomerService extends StepUtils {
+    public static final String USERS_TABLE = "tbl_users";
+    private static final ColumnProjection CUSTOMER_COLUMNS = new ColumnProjection("first_name", "last_name", "email_id", "contact_no");
+    private static final ColumnProjection CUSTOMER_RECORD_COLUMNS = new ColumnProjection("id", "first_name", "last_name", "email_id", "contact_no");
+
+    /**
+     * Compares customer values (first name, last name, email, contact number) by email
+     */
+    public static final RecordReconciler CUSTOMER_RECONCILER = new RecordReconciler(CUSTOMER_COLUMNS.getColumns(), "email_id");
+
+    /**
+     * Compares customer records (id followed by the customer values) by id
+     */
+    public static final RecordReconciler CUSTOMER_RECORD_RECONCILER = new RecordReconciler(CUSTOMER_RECORD_COLUMNS.getColumns(), "id");
 
     /**
      * Method to get customer information
@@ -18,50 +35,32 @@ public class CustomerService extends StepUtils {
      * @throws Throwable
      */
     public static String[] getAddedCustomerInformation() throws Throwable {
-        String[] customerInformation = null;
-        String sqlQuery = CommonUtils.getSqlQueries().get("retrieve_customer_info").toString();
-        Connection con = DBUtilities.setupMySqlDBConnection();
-        PreparedStatement preparedStatement = con.prepareStatement(sqlQuery);
-        ResultSet rs = preparedStatement.executeQuery();
-        while (rs.next()) {
-            String FirstName = rs.getString("first_name");
-            String LastName = rs.getString("last_name");
-            String Email = rs.getString("email_id");
-            String ContactNumber = rs.getString("contact_no");
-            customerInformation = new String[]{FirstName, LastName, Email, ContactNumber};
-        }
-        return customerInformation;
+        return QueryExecutor.first(QueryRegistry.get("retrieve_customer_info"), Collections.emptyMap(),
+                CUSTOMER_COLUMNS, RowMapper.STRINGS);
     }
 
     public static String[] getUpdatedCustomerInformation() throws Throwable {
-        String[] updatedCustomerInformation = null;
-        String sqlQuery = CommonUtils.getSqlQueries().get("retrieve_updated_customer_info").toString().replaceAll("= \\?", "= " + HomePage.record_id + "");
-        Connection con = DBUtilities.setupMySqlDBConnection();
-        PreparedStatement preparedStatement = con.prepareStatement(sqlQuery);
-        ResultSet rs = preparedStatement.executeQuery();
-        while (rs.next()) {
-            String UpdatedFirstName = rs.getString("first_name");
-            String UpdatedLastName = rs.getString("last_name");
-            String UpdatedEmail = rs.getString("email_id");
-            String UpdatedContactNumber = rs.getString("contact_no");
-            updatedCustomerInformation = new String[]{UpdatedFirstName, UpdatedLastName, UpdatedEmail, UpdatedContactNumber};
-        }
-        return updatedCustomerInformation;
+        return QueryExecutor.first(QueryRegistry.get("retrieve_updated_customer_info"), recordId(),
+                CUSTOMER_COLUMNS, RowMapper.STRINGS);
     }
 
     public static String[] verifyRecordDeleted() throws Throwable {
-        String[] deletedCustomerInformation = null;
-        String sqlQuery = CommonUtils.getSqlQueries().get("retrieve_deleted_customer_info").toString().replaceAll("= \\?", "= " + HomePage.record_id + "");
-        Connection con = DBUtilities.setupMySqlDBConnection();
-        PreparedStatement preparedStatement = con.prepareStatement(sqlQuery);
-        ResultSet rs = preparedStatement.executeQuery();
-        while (rs.next()) {
-            String UpdatedFirstName = rs.getString("first_name");
-            String UpdatedLastName = rs.getString("last_name");
-            String UpdatedEmail = rs.getString("email_id");
-            String UpdatedContactNumber = rs.getString("contact_no");
-            deletedCustomerInformation = new String[]{UpdatedFirstName, UpdatedLastName, UpdatedEmail, UpdatedContactNumber};
-        }
-        return deletedCustomerInformation;
+        return QueryExecutor.first(QueryRegistry.get("retrieve_deleted_customer_info"), recordId(),
+                CUSTOMER_COLUMNS, RowMapper.STRINGS);
+    }
+
+    /**
+     * Streams all customer records ordered by id, close the stream to release the connection
+     *
+     * @return id and customer values of every record
+     * @throws SQLException query errors
+     */
+    public static Stream<String[]> streamCustomerRecords() throws SQLException {
+        return QueryExecutor.stream(QueryRegistry.get("retrieve_all_customers"), Collections.emptyMap(),
+                CUSTOMER_RECORD_COLUMNS, RowMapper.STRINGS);
+    }
+
+    private static Map<String, Object> recordId() {
+        return Collections.singletonMap("id", HomePage.getRecordId());
     }
 }
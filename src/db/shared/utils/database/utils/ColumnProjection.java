@@ -0,0 +1,47 @@
+package db.shared.utils.database.utils;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The columns a verification actually reads from a result set.
+ * <p>
+ * Column names are resolved to indexes once per result set by {@link #resolve(ResultSet)}; rows are then
+ * read by index.
+ * </p>
+ */
+public class ColumnProjection {
+    private final List<String> columns;
+
+    public ColumnProjection(String... columns) {
+        if (columns.length == 0)
+            throw new IllegalArgumentException("A projection needs at least one column");
+        this.columns = Collections.unmodifiableList(Arrays.asList(columns.clone()));
+    }
+
+    public List<String> getColumns() {
+        return columns;
+    }
+
+    /**
+     * Looks up the index of every projected column
+     *
+     * @param rs result set to resolve against
+     * @return 1-based column indexes in projection order
+     * @throws SQLException if a column is not in the result set
+     */
+    public int[] resolve(ResultSet rs) throws SQLException {
+        int[] indexes = new int[columns.size()];
+        for (int i = 0; i < indexes.length; i++)
+            indexes[i] = rs.findColumn(columns.get(i));
+        return indexes;
+    }
+
+    @Override
+    public String toString() {
+        return String.join(", ", columns);
+    }
+}
@@ -1,5 +1,7 @@
 package db.shared.utils.database.utils;
 
+import db.framework.runner.MainRunner;
+
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
@@ -7,38 +9,70 @@ import java.sql.SQLException;
 
 public class DBConnection {
 
-    public static Connection con = null;
+    private static final String DEFAULT_MYSQL_URL = "jdbc:mysql://10.101.15.48:3306/test";
+    private static final String DEFAULT_MYSQL_USERNAME = "root";
+    private static final String DEFAULT_MYSQL_PASSWORD = "";
 
-    public Connection createMySqlConnection() {
+    private String url;
+    private String username;
+    private String password;
 
-        if (con == null) {
-            String url = "jdbc:mysql://10.101.15.48:3306/test";
-            String username = "root";
-            String password = "";
+    public DBConnection() {
+        url = getParam("db_url", DEFAULT_MYSQL_URL);
+        username = getParam("db_username", DEFAULT_MYSQL_USERNAME);
+        password = getParam("db_password", DEFAULT_MYSQL_PASSWORD);
+    }
 
-            try {
-                Class.forName("com.mysql.jdbc.Driver");
-                System.out.println("Connecting to the " + url + " database...");
-                con = DriverManager.getConnection(url, username, password);
-            } catch (Exception e) {
-                System.out.println("Error occurs while creating database connection" + e.getMessage());
-            }
+    /**
+     * Opens a new physical MySQL connection. Callers should normally borrow from
+     * {@link DBConnectionPool} through {@link DBUtilities#setupMySqlDBConnection()} instead.
+     *
+     * @return new MySQL connection
+     * @throws SQLException if the driver is missing or the database refuses the connection
+     */
+    public Connection createMySqlConnection() throws SQLException {
+        try {
+            Class.forName("com.mysql.jdbc.Driver");
+        } catch (ClassNotFoundException e) {
+            throw new SQLException("MySQL driver not found: " + e.getMessage());
         }
-        return con;
+        System.out.println("Connecting to the " + url + " database...");
+        return DriverManager.getConnection(url, username, password);
     }
 
-    public Connection createSqlConnection() {
-        //TODO
-        return con;
+    /**
+     * Borrows a connection from the shared {@link DBConnectionPool}, close it to return it to the pool.
+     * There is no separate SQL Server connection, this is the MySQL pool.
+     *
+     * @return pooled connection
+     * @throws SQLException if no connection is available
+     */
+    public Connection createSqlConnection() throws SQLException {
+        return DBConnectionPool.getMySqlPool().borrow();
     }
 
+    /**
+     * Closes all pooled database connections
+     */
     public static void closeConnection() {
+        DBConnectionPool.shutdownAll();
+    }
+
+    static String getParam(String name, String defaultValue) {
+        String value = MainRunner.getExParams(name);
+        return value != null ? value : defaultValue;
+    }
+
+    static long getParam(String name, long defaultValue) {
+        String value = MainRunner.getExParams(name);
+        if (value == null)
+            return defaultValue;
         try {
-            if (con != null && !con.isClosed())
-                con.close();
-        } catch (SQLException e) {
-            e.printStackTrace();
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            System.err.println("-->DBConnection: invalid value for " + name + ": " + value);
+            return defaultValue;
         }
     }
 
-}
\ No newline at end of file
+}
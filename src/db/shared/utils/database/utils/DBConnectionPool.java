@@ -0,0 +1,359 @@
+package db.shared.utils.database.utils;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded, thread-safe JDBC connection pool.
+ * <p>
+ * Connections handed out by {@link #borrow()} are proxies: calling {@code close()} returns the physical
+ * connection to the pool instead of closing it. Idle connections are validated on borrow, evicted after
+ * "db_pool_idle_timeout" and recycled after "db_pool_max_lifetime".
+ * </p>
+ */
+public class DBConnectionPool {
+    private static final String VALIDATION_QUERY = "SELECT 1";
+    private static final long VALIDATE_AFTER_IDLE = 5 * 1000L;
+    private static final long EVICTION_INTERVAL = 30 * 1000L;
+
+    private static DBConnectionPool mySqlPool;
+    private static boolean shutdownHookAdded = false;
+
+    private final DBConnection factory;
+    private final String name;
+    private final int maxSize;
+    private final long borrowTimeout;
+    private final long idleTimeout;
+    private final long maxLifetime;
+    private final int statementCacheSize;
+
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private final Semaphore permits;
+    private final ScheduledExecutorService evictor;
+    private volatile boolean shutdown = false;
+
+    // metrics
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong destroyed = new AtomicLong();
+    private final AtomicLong borrowed = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    /**
+     * Creates a connection pool
+     *
+     * @param name          name used in log messages
+     * @param factory       source of new physical connections
+     * @param maxSize       maximum number of physical connections
+     * @param borrowTimeout time to wait for a free connection (in millis)
+     * @param idleTimeout   time an idle connection is kept before eviction (in millis)
+     * @param maxLifetime   time after which a connection is recycled (in millis)
+     */
+    public DBConnectionPool(String name, DBConnection factory, int maxSize, long borrowTimeout, long idleTimeout, long maxLifetime) {
+        this.name = name;
+        this.factory = factory;
+        this.maxSize = maxSize;
+        this.borrowTimeout = borrowTimeout;
+        this.idleTimeout = idleTimeout;
+        this.maxLifetime = maxLifetime;
+        this.statementCacheSize = (int) DBConnection.getParam("db_statement_cache_size", 32L);
+        this.permits = new Semaphore(maxSize, true);
+        this.evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread th = new Thread(r, "DBConnectionPool-evictor-" + name);
+            th.setDaemon(true);
+            return th;
+        });
+        this.evictor.scheduleWithFixedDelay(this::evictIdle, EVICTION_INTERVAL, EVICTION_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Gets the shared MySQL pool, creating it on first use
+     *
+     * @return MySQL connection pool
+     */
+    public static synchronized DBConnectionPool getMySqlPool() {
+        if (mySqlPool == null || mySqlPool.shutdown) {
+            mySqlPool = new DBConnectionPool("mysql", new DBConnection(),
+                    (int) DBConnection.getParam("db_pool_size", 4L),
+                    DBConnection.getParam("db_pool_borrow_timeout", 30 * 1000L),
+                    DBConnection.getParam("db_pool_idle_timeout", 5 * 60 * 1000L),
+                    DBConnection.getParam("db_pool_max_lifetime", 30 * 60 * 1000L));
+            if (!shutdownHookAdded) {
+                Runtime.getRuntime().addShutdownHook(new Thread(DBConnectionPool::shutdownAll));
+                shutdownHookAdded = true;
+            }
+        }
+        return mySqlPool;
+    }
+
+    /**
+     * Closes every pooled connection of the shared pools
+     */
+    public static synchronized void shutdownAll() {
+        if (mySqlPool != null) {
+            mySqlPool.shutdown();
+            mySqlPool = null;
+        }
+    }
+
+    /**
+     * Borrows a connection from the pool. Close the returned connection to give it back.
+     *
+     * @return pooled connection
+     * @throws SQLException if no connection becomes available within the borrow timeout
+     */
+    public Connection borrow() throws SQLException {
+        if (shutdown)
+            throw new SQLException("Connection pool '" + name + "' is shut down");
+
+        long ts = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(borrowTimeout, TimeUnit.MILLISECONDS)) {
+                timeouts.incrementAndGet();
+                throw new SQLException("Timed out after " + borrowTimeout + " ms waiting for a connection from pool '" + name + "': " + getStatistics());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection from pool '" + name + "'");
+        }
+
+        try {
+            PooledConnection pc;
+            while ((pc = idle.pollFirst()) != null) {
+                if (isUsable(pc))
+                    break;
+                destroy(pc);
+            }
+            if (pc == null)
+                pc = new PooledConnection(factory.createMySqlConnection());
+
+            recordWait(System.nanoTime() - ts);
+            borrowed.incrementAndGet();
+            active.incrementAndGet();
+            return pc.checkout();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Gets a one line summary of the pool state
+     *
+     * @return pool metrics
+     */
+    public String getStatistics() {
+        long count = borrowed.get();
+        return "pool=" + name +
+                " active=" + active.get() +
+                " idle=" + idle.size() +
+                " max=" + maxSize +
+                " created=" + created.get() +
+                " destroyed=" + destroyed.get() +
+                " borrowed=" + count +
+                " timeouts=" + timeouts.get() +
+                " avg_wait_ms=" + (count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalWaitNanos.get() / count)) +
+                " max_wait_ms=" + TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get());
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public int getActiveCount() {
+        return active.get();
+    }
+
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    /**
+     * Closes all idle connections and stops handing out new ones
+     */
+    public void shutdown() {
+        if (shutdown)
+            return;
+        shutdown = true;
+        evictor.shutdownNow();
+        PooledConnection pc;
+        while ((pc = idle.pollFirst()) != null)
+            destroy(pc);
+        System.out.println("-->DBConnectionPool closed: " + getStatistics());
+    }
+
+    private void release(PooledConnection pc) {
+        active.decrementAndGet();
+        try {
+            if (shutdown || pc.broken || isExpired(pc, System.currentTimeMillis()) || !reset(pc)) {
+                destroy(pc);
+            } else {
+                pc.lastUsed = System.currentTimeMillis();
+                idle.offerFirst(pc);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    // restore defaults a borrower may have changed
+    private boolean reset(PooledConnection pc) {
+        try {
+            if (!pc.connection.getAutoCommit()) {
+                pc.connection.rollback();
+                pc.connection.setAutoCommit(true);
+            }
+            pc.connection.clearWarnings();
+            return true;
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private boolean isUsable(PooledConnection pc) {
+        long now = System.currentTimeMillis();
+        if (isExpired(pc, now))
+            return false;
+        try {
+            if (pc.connection.isClosed())
+                return false;
+            if (now - pc.lastUsed < VALIDATE_AFTER_IDLE)
+                return true;
+            try (Statement st = pc.connection.createStatement()) {
+                st.setQueryTimeout(5);
+                st.execute(VALIDATION_QUERY);
+            }
+            return true;
+        } catch (SQLException e) {
+            System.err.println("-->DBConnectionPool: dropping stale connection: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private boolean isExpired(PooledConnection pc, long now) {
+        return now - pc.createdAt > maxLifetime;
+    }
+
+    private void evictIdle() {
+        long now = System.currentTimeMillis();
+        Iterator<PooledConnection> it = idle.descendingIterator();
+        while (it.hasNext()) {
+            PooledConnection pc = it.next();
+            if ((now - pc.lastUsed > idleTimeout || isExpired(pc, now)) && idle.remove(pc))
+                destroy(pc);
+        }
+    }
+
+    private void destroy(PooledConnection pc) {
+        destroyed.incrementAndGet();
+        pc.statementCache.clear();
+        try {
+            pc.connection.close();
+        } catch (SQLException e) {
+            // already gone
+        }
+    }
+
+    private void recordWait(long nanos) {
+        totalWaitNanos.addAndGet(nanos);
+        long max;
+        while (nanos > (max = maxWaitNanos.get()) && !maxWaitNanos.compareAndSet(max, nanos)) {
+            // retry
+        }
+    }
+
+    /**
+     * Physical connection and its pooling state
+     */
+    private class PooledConnection {
+        private final Connection connection;
+        private final StatementCache statementCache;
+        private final long createdAt = System.currentTimeMillis();
+        private volatile long lastUsed = createdAt;
+        private boolean broken;
+
+        PooledConnection(Connection connection) {
+            this.connection = connection;
+            this.statementCache = new StatementCache(connection, statementCacheSize);
+            created.incrementAndGet();
+        }
+
+        Connection checkout() {
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, new Lease(this));
+        }
+    }
+
+    /**
+     * One borrow of a pooled connection. A lease cannot be used once it has been closed, even if the
+     * physical connection has been handed to another borrower since.
+     */
+    private class Lease implements InvocationHandler {
+        private final PooledConnection pc;
+        private volatile boolean open = true;
+
+        Lease(PooledConnection pc) {
+            this.pc = pc;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (open) {
+                        open = false;
+                        release(pc);
+                    }
+                    return null;
+                case "isClosed":
+                    return !open || pc.connection.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled[" + pc.connection + "]";
+            }
+            if (!open)
+                throw new SQLException("Connection has already been returned to pool '" + name + "'");
+            try {
+                // plain prepareStatement(sql) calls are served from the per-connection statement cache
+                if (method.getName().equals("prepareStatement") && args.length == 1 && statementCacheSize > 0)
+                    return pc.statementCache.prepare((String) args[0]);
+
+                return method.invoke(pc.connection, args);
+            } catch (SQLException e) {
+                // the statement cache calls the driver directly
+                checkBroken(e);
+                throw e;
+            } catch (InvocationTargetException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof SQLException)
+                    checkBroken((SQLException) cause);
+                throw cause;
+            }
+        }
+
+        // SQL state class 08 is a connection exception, never hand this connection out again
+        private void checkBroken(SQLException e) {
+            String state = e.getSQLState();
+            if (state != null && state.startsWith("08"))
+                pc.broken = true;
+        }
+    }
+}
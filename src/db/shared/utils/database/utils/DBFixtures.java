@@ -0,0 +1,113 @@
+package db.shared.utils.database.utils;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Seeds and cleans test data directly in the database.
+ * <p>
+ * Table and column names cannot be bound as parameters, so they are checked against a plain identifier
+ * pattern before being put into the SQL text. Bulk inserts are sent in JDBC batches of
+ * "db_fixture_batch_size" rows (default 500) inside one transaction.
+ * </p>
+ */
+public class DBFixtures {
+    private static final String IDENTIFIER = "[A-Za-z_][A-Za-z0-9_]*";
+    private static final int BATCH_SIZE = (int) DBConnection.getParam("db_fixture_batch_size", 500L);
+
+    /**
+     * Removes all rows of a table
+     *
+     * @param table table name
+     * @throws SQLException database errors
+     */
+    public static void truncate(String table) throws SQLException {
+        long ts = System.currentTimeMillis();
+        try (Connection con = DBUtilities.setupMySqlDBConnection();
+             Statement st = con.createStatement()) {
+            st.execute("TRUNCATE TABLE " + identifier(table));
+        }
+        System.out.println("-->DBFixtures: truncated " + table + " in " + (System.currentTimeMillis() - ts) + " ms");
+    }
+
+    /**
+     * Deletes the rows of a table whose column matches a tag
+     *
+     * @param table  table name
+     * @param column column holding the tag
+     * @param tag    SQL LIKE pattern, e.g. "%@autotest.com"
+     * @return number of deleted rows
+     * @throws SQLException database errors
+     */
+    public static int deleteByTag(String table, String column, String tag) throws SQLException {
+        long ts = System.currentTimeMillis();
+        int count;
+        try (Connection con = DBUtilities.setupMySqlDBConnection();
+             PreparedStatement ps = con.prepareStatement("DELETE FROM " + identifier(table) + " WHERE " + identifier(column) + " LIKE ?")) {
+            ps.setString(1, tag);
+            count = ps.executeUpdate();
+        }
+        System.out.println("-->DBFixtures: deleted " + count + " row(s) from " + table + " matching " + tag +
+                " in " + (System.currentTimeMillis() - ts) + " ms");
+        return count;
+    }
+
+    /**
+     * Inserts rows in JDBC batches inside a single transaction. Nothing is inserted if any row fails.
+     *
+     * @param table   table name
+     * @param columns column names
+     * @param rows    row values in column order
+     * @return number of inserted rows
+     * @throws SQLException database errors
+     */
+    public static int insert(String table, List<String> columns, List<Object[]> rows) throws SQLException {
+        if (columns.isEmpty())
+            throw new IllegalArgumentException("No columns given for " + table);
+        if (rows.isEmpty())
+            return 0;
+
+        StringBuilder sql = new StringBuilder("INSERT INTO ").append(identifier(table)).append(" (");
+        for (int i = 0; i < columns.size(); i++)
+            sql.append(i == 0 ? "" : ", ").append(identifier(columns.get(i)));
+        sql.append(") VALUES (").append(String.join(", ", Collections.nCopies(columns.size(), "?"))).append(")");
+
+        long ts = System.currentTimeMillis();
+        try (Connection con = DBUtilities.setupMySqlDBConnection()) {
+            con.setAutoCommit(false);
+            try (PreparedStatement ps = con.prepareStatement(sql.toString())) {
+                int pending = 0;
+                for (Object[] row : rows) {
+                    if (row.length != columns.size())
+                        throw new IllegalArgumentException("Row has " + row.length + " value(s), expected " + columns.size() + " for " + columns);
+                    for (int i = 0; i < row.length; i++)
+                        ps.setObject(i + 1, row[i]);
+                    ps.addBatch();
+                    if (++pending == BATCH_SIZE) {
+                        ps.executeBatch();
+                        pending = 0;
+                    }
+                }
+                if (pending > 0)
+                    ps.executeBatch();
+                con.commit();
+            } catch (SQLException | RuntimeException e) {
+                con.rollback();
+                throw e;
+            }
+        }
+        System.out.println("-->DBFixtures: inserted " + rows.size() + " row(s) into " + table +
+                " in " + (System.currentTimeMillis() - ts) + " ms");
+        return rows.size();
+    }
+
+    private static String identifier(String name) {
+        if (name == null || !name.matches(IDENTIFIER))
+            throw new IllegalArgumentException("Invalid table or column name: " + name);
+        return "`" + name + "`";
+    }
+}
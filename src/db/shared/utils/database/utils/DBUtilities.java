@@ -1,6 +1,7 @@
 package db.shared.utils.database.utils;
 
 import java.sql.Connection;
+import java.sql.SQLException;
 
 public class DBUtilities {
 
@@ -10,16 +11,29 @@ public class DBUtilities {
 
     /**
      * Method to setup DB connection
+     * <p>
+     * The connection is borrowed from the shared {@link DBConnectionPool}; close it (try-with-resources)
+     * to return it to the pool.
+     * </p>
      *
      * @return DB connection object
+     * @throws SQLException if no connection is available
      */
-    public static Connection setupMySqlDBConnection() {
-        DBConnection dbConnection = new DBConnection();
-        return dbConnection.createMySqlConnection();
+    public static Connection setupMySqlDBConnection() throws SQLException {
+        return DBConnectionPool.getMySqlPool().borrow();
+    }
+
+    /**
+     * Method to get the MySQL connection pool metrics
+     *
+     * @return active/idle/wait time summary
+     */
+    public static String getMySqlPoolStatistics() {
+        return DBConnectionPool.getMySqlPool().getStatistics();
     }
 
 /*    public static Connection setupSqlDBConnection() {
         //TODO
     }*/
 
-}
\ No newline at end of file
+}
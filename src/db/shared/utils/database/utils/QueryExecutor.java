@@ -0,0 +1,145 @@
+package db.shared.utils.database.utils;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Runs catalog queries on a pooled connection and maps the rows.
+ * <p>
+ * {@link #last} and {@link #stream} read forward-only, read-only cursors with a fetch size of
+ * {@link Integer#MIN_VALUE}, which makes MySQL Connector/J stream the rows one by one instead of buffering
+ * the whole result set (it ignores any positive fetch size). A streaming result set must be read or closed
+ * before anything else runs on its connection, so every call borrows its own pooled connection and the
+ * streamed statements are not taken from the statement cache.
+ * </p>
+ */
+public class QueryExecutor {
+
+    /**
+     * Gets the first row of a query
+     *
+     * @param query      compiled query
+     * @param params     named parameter values
+     * @param projection columns to read
+     * @param mapper     row mapper
+     * @param <T>        row type
+     * @return first row or null if the query returned no rows
+     * @throws SQLException query errors
+     */
+    public static <T> T first(SqlQuery query, Map<String, ?> params, ColumnProjection projection, RowMapper<T> mapper) throws SQLException {
+        try (Connection con = DBUtilities.setupMySqlDBConnection();
+             PreparedStatement ps = prepare(query, con, params, 1, false);
+             ResultSet rs = ps.executeQuery()) {
+            if (!rs.next())
+                return null;
+            return mapper.map(rs, projection.resolve(rs));
+        }
+    }
+
+    /**
+     * Gets the last row of a query, reading the rows in between without keeping them
+     *
+     * @param query      compiled query
+     * @param params     named parameter values
+     * @param projection columns to read
+     * @param mapper     row mapper
+     * @param <T>        row type
+     * @return last row or null if the query returned no rows
+     * @throws SQLException query errors
+     */
+    public static <T> T last(SqlQuery query, Map<String, ?> params, ColumnProjection projection, RowMapper<T> mapper) throws SQLException {
+        try (Connection con = DBUtilities.setupMySqlDBConnection();
+             PreparedStatement ps = prepare(query, con, params, 0, true);
+             ResultSet rs = ps.executeQuery()) {
+            T row = null;
+            int[] columns = null;
+            while (rs.next()) {
+                if (columns == null)
+                    columns = projection.resolve(rs);
+                row = mapper.map(rs, columns);
+            }
+            return row;
+        }
+    }
+
+    /**
+     * Streams the rows of a query lazily. The stream holds a pooled connection until it is closed, so use it
+     * in a try-with-resources block. Closing it before the last row still reads the remaining rows.
+     *
+     * @param query      compiled query
+     * @param params     named parameter values
+     * @param projection columns to read
+     * @param mapper     row mapper
+     * @param <T>        row type
+     * @return lazy stream of rows
+     * @throws SQLException query errors
+     */
+    public static <T> Stream<T> stream(SqlQuery query, Map<String, ?> params, ColumnProjection projection, RowMapper<T> mapper) throws SQLException {
+        Connection con = DBUtilities.setupMySqlDBConnection();
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            ps = prepare(query, con, params, 0, true);
+            rs = ps.executeQuery();
+        } catch (SQLException | RuntimeException e) {
+            closeAll(rs, ps, con);
+            throw e;
+        }
+
+        final ResultSet cursor = rs;
+        final PreparedStatement statement = ps;
+        Spliterator<T> rows = new Spliterators.AbstractSpliterator<T>(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+            private int[] columns;
+
+            @Override
+            public boolean tryAdvance(Consumer<? super T> action) {
+                try {
+                    if (!cursor.next())
+                        return false;
+                    if (columns == null)
+                        columns = projection.resolve(cursor);
+                    action.accept(mapper.map(cursor, columns));
+                    return true;
+                } catch (SQLException e) {
+                    throw new RuntimeException("Error reading rows of query " + query.getName() + ": " + e.getMessage(), e);
+                }
+            }
+        };
+        return StreamSupport.stream(rows, false).onClose(() -> closeAll(cursor, statement, con));
+    }
+
+    private static PreparedStatement prepare(SqlQuery query, Connection con, Map<String, ?> params, int maxRows,
+                                             boolean streaming) throws SQLException {
+        PreparedStatement ps = streaming ? query.prepareStreaming(con) : query.prepare(con);
+        try {
+            // statements are cached per connection, so always reset the cursor settings
+            ps.setFetchSize(streaming ? Integer.MIN_VALUE : 0);
+            ps.setMaxRows(maxRows);
+            query.bind(ps, params);
+            return ps;
+        } catch (SQLException | RuntimeException e) {
+            ps.close();
+            throw e;
+        }
+    }
+
+    private static void closeAll(AutoCloseable... resources) {
+        for (AutoCloseable resource : resources) {
+            if (resource == null)
+                continue;
+            try {
+                resource.close();
+            } catch (Exception e) {
+                // ignore
+            }
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package db.shared.utils.database.utils;
+
+import db.framework.utils.Utils;
+import db.shared.utils.CommonUtils;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable catalog of the queries in queries.json, each compiled once into a {@link SqlQuery}.
+ * <p>
+ * The file is read, parsed and validated once on first use. When it lives on the file system it is
+ * watched and reloaded on change; a reload that fails validation keeps the previous catalog.
+ * </p>
+ */
+public class QueryRegistry {
+    private static final String QUERIES_FILE = "queries.json";
+
+    private static volatile Catalog catalog;
+    private static Thread watcher;
+
+    /**
+     * Gets a compiled query
+     *
+     * @param name key of the query in queries.json
+     * @return compiled query
+     */
+    public static SqlQuery get(String name) {
+        SqlQuery query = getCatalog().queries.get(name);
+        if (query == null)
+            throw new IllegalArgumentException("Query '" + name + "' is not defined in " + QUERIES_FILE);
+        return query;
+    }
+
+    /**
+     * Gets all compiled queries
+     *
+     * @return compiled queries by name
+     */
+    public static Map<String, SqlQuery> getQueries() {
+        return getCatalog().queries;
+    }
+
+    /**
+     * Gets a copy of the raw queries.json content
+     *
+     * @return queries as json object
+     */
+    public static JSONObject getSqlQueries() {
+        JSONObject json = getCatalog().json;
+        String[] names = JSONObject.getNames(json);
+        return names == null ? new JSONObject() : new JSONObject(json, names);
+    }
+
+    /**
+     * Forces queries.json to be read again
+     */
+    public static synchronized void reload() {
+        catalog = load(CommonUtils.getResourceFile(QUERIES_FILE));
+    }
+
+    private static Catalog getCatalog() {
+        Catalog current = catalog;
+        if (current != null)
+            return current;
+        synchronized (QueryRegistry.class) {
+            if (catalog == null) {
+                File file = CommonUtils.getResourceFile(QUERIES_FILE);
+                catalog = load(file);
+                watch(file);
+            }
+            return catalog;
+        }
+    }
+
+    private static Catalog load(File file) {
+        long ts = System.currentTimeMillis();
+        JSONObject json;
+        try {
+            json = new JSONObject(Utils.readTextFile(file));
+        } catch (IOException | JSONException e) {
+            throw new IllegalStateException("Cannot load " + file.getAbsolutePath() + ": " + e.getMessage(), e);
+        }
+
+        Map<String, SqlQuery> compiled = new HashMap<>();
+        String[] names = JSONObject.getNames(json);
+        if (names != null) {
+            for (String name : names) {
+                Object value = json.get(name);
+                if (!(value instanceof String))
+                    throw new IllegalStateException("Query '" + name + "' in " + QUERIES_FILE + " is not a string");
+                compiled.put(name, SqlQuery.compile(name, (String) value));
+            }
+        }
+        System.out.println("-->QueryRegistry: loaded " + compiled.size() + " queries from " + file.getName() +
+                " in " + (System.currentTimeMillis() - ts) + " ms");
+        return new Catalog(json, Collections.unmodifiableMap(compiled));
+    }
+
+    private static void watch(File file) {
+        if (watcher != null || !file.isFile())
+            return;
+        Path dir = file.getAbsoluteFile().getParentFile().toPath();
+        String fileName = file.getName();
+        WatchService watchService;
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            dir.register(watchService, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_CREATE);
+        } catch (IOException e) {
+            System.err.println("-->QueryRegistry: cannot watch " + dir + ": " + e.getMessage());
+            return;
+        }
+
+        watcher = new Thread(() -> {
+            try {
+                while (true) {
+                    WatchKey key = watchService.take();
+                    boolean changed = false;
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (fileName.equals(String.valueOf(event.context())))
+                            changed = true;
+                    }
+                    if (changed) {
+                        try {
+                            reload();
+                        } catch (RuntimeException e) {
+                            System.err.println("-->QueryRegistry: keeping previous queries, reload failed: " + e.getMessage());
+                        }
+                    }
+                    if (!key.reset())
+                        break;
+                }
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                // stop watching
+            }
+        }, "QueryRegistry-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    private static class Catalog {
+        private final JSONObject json;
+        private final Map<String, SqlQuery> queries;
+
+        Catalog(JSONObject json, Map<String, SqlQuery> queries) {
+            this.json = json;
+            this.queries = queries;
+        }
+    }
+}
@@ -0,0 +1,320 @@
+package db.shared.utils.database.utils;
+
+import com.google.gson.GsonBuilder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+
+/**
+ * Compares two sets of records, e.g. the rows shown in the UI and the rows read from the database.
+ * <p>
+ * Rows are string arrays in the order of the reconciler columns. The expected rows are hashed by their
+ * key columns, the actual rows are then streamed once against that index, so reconciling n rows is O(n)
+ * and the actual side never has to be held in memory: extra and duplicate rows are counted, only the first
+ * 20 of each are kept for the report. Every actual row is either matched (possibly with field differences)
+ * or extra; expected rows that were never seen are missing.
+ * </p>
+ * Values are trimmed and null is read as "" before comparing, see {@link #withNormalizer(UnaryOperator)}.
+ */
+public class RecordReconciler {
+    private static final int REPORT_LIMIT = 20;
+
+    private final List<String> columns;
+    private final int[] keyColumns;
+    private final UnaryOperator<String> normalizer;
+
+    /**
+     * Creates a reconciler
+     *
+     * @param columns    column names, in row order
+     * @param keyColumns columns identifying a record
+     */
+    public RecordReconciler(List<String> columns, String... keyColumns) {
+        this(columns, resolveKeys(columns, keyColumns), value -> value == null ? "" : value.trim());
+    }
+
+    private RecordReconciler(List<String> columns, int[] keyColumns, UnaryOperator<String> normalizer) {
+        this.columns = Collections.unmodifiableList(new ArrayList<>(columns));
+        this.keyColumns = keyColumns;
+        this.normalizer = normalizer;
+    }
+
+    /**
+     * Gets a reconciler using another value normalization, e.g. to ignore case
+     *
+     * @param normalizer applied to every value before comparing, gets null for missing values
+     * @return new reconciler
+     */
+    public RecordReconciler withNormalizer(UnaryOperator<String> normalizer) {
+        return new RecordReconciler(columns, keyColumns, normalizer);
+    }
+
+    public List<String> getColumns() {
+        return columns;
+    }
+
+    /**
+     * Reconciles two lists of rows
+     *
+     * @param expected expected rows
+     * @param actual   actual rows
+     * @return diff report
+     */
+    public Report reconcile(List<String[]> expected, List<String[]> actual) {
+        return reconcile(expected, actual.stream());
+    }
+
+    /**
+     * Reconciles expected rows with a stream of actual rows, e.g. from {@link QueryExecutor#stream}
+     *
+     * @param expected expected rows
+     * @param actual   actual rows, consumed once
+     * @return diff report
+     */
+    public Report reconcile(List<String[]> expected, Stream<String[]> actual) {
+        Report report = new Report(columns);
+        Map<List<String>, String[]> pending = new LinkedHashMap<>(Math.max(16, expected.size() * 4 / 3 + 1));
+        for (String[] row : expected) {
+            String[] normalized = normalize(row);
+            if (pending.putIfAbsent(key(normalized), normalized) != null)
+                report.addDuplicate(normalized);
+        }
+
+        Set<List<String>> seen = new HashSet<>();
+        Iterator<String[]> it = actual.iterator();
+        while (it.hasNext()) {
+            String[] row = normalize(it.next());
+            List<String> key = key(row);
+            String[] match = pending.remove(key);
+            if (match != null) {
+                seen.add(key);
+                compare(key, match, row, report);
+            } else if (seen.contains(key)) {
+                report.addDuplicate(row);
+            } else {
+                report.addExtra(row);
+            }
+        }
+        report.missing.addAll(pending.values());
+        return report;
+    }
+
+    private void compare(List<String> key, String[] expected, String[] actual, Report report) {
+        boolean same = true;
+        for (int i = 0; i < columns.size(); i++) {
+            if (!expected[i].equals(actual[i])) {
+                report.diffs.add(new FieldDiff(key, columns.get(i), expected[i], actual[i]));
+                same = false;
+            }
+        }
+        if (same)
+            report.matched++;
+        else
+            report.changed++;
+    }
+
+    private String[] normalize(String[] row) {
+        String[] normalized = new String[columns.size()];
+        for (int i = 0; i < normalized.length; i++)
+            normalized[i] = normalizer.apply(i < row.length ? row[i] : null);
+        return normalized;
+    }
+
+    private List<String> key(String[] row) {
+        String[] key = new String[keyColumns.length];
+        for (int i = 0; i < key.length; i++)
+            key[i] = row[keyColumns[i]];
+        return Arrays.asList(key);
+    }
+
+    private static int[] resolveKeys(List<String> columns, String[] keyColumns) {
+        if (keyColumns.length == 0)
+            throw new IllegalArgumentException("A reconciler needs at least one key column");
+        int[] keys = new int[keyColumns.length];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = columns.indexOf(keyColumns[i]);
+            if (keys[i] < 0)
+                throw new IllegalArgumentException("Key column " + keyColumns[i] + " is not one of " + columns);
+        }
+        return keys;
+    }
+
+    /**
+     * Difference of one field of a matched record
+     */
+    public static class FieldDiff {
+        private final List<String> key;
+        private final String column;
+        private final String expected;
+        private final String actual;
+
+        FieldDiff(List<String> key, String column, String expected, String actual) {
+            this.key = key;
+            this.column = column;
+            this.expected = expected;
+            this.actual = actual;
+        }
+
+        public List<String> getKey() {
+            return key;
+        }
+
+        public String getColumn() {
+            return column;
+        }
+
+        public String getExpected() {
+            return expected;
+        }
+
+        public String getActual() {
+            return actual;
+        }
+
+        @Override
+        public String toString() {
+            return key + "." + column + ": expected \"" + expected + "\" but was \"" + actual + "\"";
+        }
+    }
+
+    /**
+     * Result of a reconciliation
+     */
+    public static class Report {
+        private final List<String> columns;
+        private int matched;
+        private int changed;
+        private final List<String[]> missing = new ArrayList<>();
+        private final List<String[]> extra = new ArrayList<>();
+        private final List<String[]> duplicates = new ArrayList<>();
+        private int extraCount;
+        private int duplicateCount;
+        private final List<FieldDiff> diffs = new ArrayList<>();
+
+        Report(List<String> columns) {
+            this.columns = columns;
+        }
+
+        private void addExtra(String[] row) {
+            if (extraCount++ < REPORT_LIMIT)
+                extra.add(row);
+        }
+
+        private void addDuplicate(String[] row) {
+            if (duplicateCount++ < REPORT_LIMIT)
+                duplicates.add(row);
+        }
+
+        /**
+         * Gets the number of records found on both sides with equal fields
+         *
+         * @return number of matched records
+         */
+        public int getMatched() {
+            return matched;
+        }
+
+        /**
+         * Gets the number of records found on both sides with at least one different field
+         *
+         * @return number of changed records
+         */
+        public int getChanged() {
+            return changed;
+        }
+
+        public List<String[]> getMissing() {
+            return missing;
+        }
+
+        /**
+         * Gets the first actual records that were not expected
+         *
+         * @return at most 20 rows, see {@link #getExtraCount()}
+         */
+        public List<String[]> getExtra() {
+            return extra;
+        }
+
+        public int getExtraCount() {
+            return extraCount;
+        }
+
+        /**
+         * Gets the first records found more than once
+         *
+         * @return at most 20 rows, see {@link #getDuplicateCount()}
+         */
+        public List<String[]> getDuplicates() {
+            return duplicates;
+        }
+
+        public int getDuplicateCount() {
+            return duplicateCount;
+        }
+
+        public List<FieldDiff> getDiffs() {
+            return diffs;
+        }
+
+        /**
+         * Checks if both sides hold the same records
+         *
+         * @param ignoreExtra true if actual records that were not expected are allowed
+         * @return true if nothing is missing, changed or duplicated
+         */
+        public boolean isClean(boolean ignoreExtra) {
+            return missing.isEmpty() && diffs.isEmpty() && duplicateCount == 0 && (ignoreExtra || extraCount == 0);
+        }
+
+        /**
+         * Gets the report as json, with at most 20 rows per section
+         *
+         * @return json report
+         */
+        public String toJson() {
+            Map<String, Object> json = new LinkedHashMap<>();
+            json.put("columns", columns);
+            json.put("matched", matched);
+            json.put("changed", changed);
+            json.put("missing", missing.size());
+            json.put("extra", extraCount);
+            json.put("duplicates", duplicateCount);
+            json.put("missing_rows", limit(missing));
+            json.put("extra_rows", limit(extra));
+            json.put("duplicate_rows", limit(duplicates));
+            json.put("diffs", limit(diffs));
+            return new GsonBuilder().setPrettyPrinting().create().toJson(json);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append("matched: ").append(matched).append(", changed: ").append(changed)
+                    .append(", missing: ").append(missing.size()).append(", extra: ").append(extraCount)
+                    .append(", duplicates: ").append(duplicateCount);
+            for (FieldDiff diff : limit(diffs))
+                sb.append("\n  changed ").append(diff);
+            for (String[] row : limit(missing))
+                sb.append("\n  missing ").append(Arrays.toString(row));
+            for (String[] row : limit(extra))
+                sb.append("\n  extra ").append(Arrays.toString(row));
+            for (String[] row : limit(duplicates))
+                sb.append("\n  duplicate ").append(Arrays.toString(row));
+            return sb.toString();
+        }
+
+        private static <T> List<T> limit(List<T> list) {
+            return list.size() > REPORT_LIMIT ? list.subList(0, REPORT_LIMIT) : list;
+        }
+    }
+}
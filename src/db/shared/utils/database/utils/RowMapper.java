@@ -0,0 +1,33 @@
+package db.shared.utils.database.utils;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Maps the current row of a result set
+ *
+ * @param <T> row type
+ */
+@FunctionalInterface
+public interface RowMapper<T> {
+
+    /**
+     * Maps the projected columns as strings, in projection order
+     */
+    RowMapper<String[]> STRINGS = (rs, columns) -> {
+        String[] row = new String[columns.length];
+        for (int i = 0; i < columns.length; i++)
+            row[i] = rs.getString(columns[i]);
+        return row;
+    };
+
+    /**
+     * Maps the current row
+     *
+     * @param rs      result set positioned on the row
+     * @param columns column indexes resolved from the {@link ColumnProjection}
+     * @return mapped row
+     * @throws SQLException read errors
+     */
+    T map(ResultSet rs, int[] columns) throws SQLException;
+}
@@ -0,0 +1,175 @@
+package db.shared.utils.database.utils;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A query from queries.json compiled into a JDBC template.
+ * <p>
+ * Parameters can be positional ({@code ?}) or named ({@code :id}). Named parameters are rewritten to
+ * {@code ?} once, so the same SQL text is sent to the driver on every call and its prepared statement
+ * can be reused.
+ * </p>
+ */
+public class SqlQuery {
+    private static final String SQL_VERBS = "select|insert|update|delete|replace|truncate|with|call|show";
+
+    private final String name;
+    private final String template;
+    private final String sql;
+    private final List<String> parameters;
+
+    private SqlQuery(String name, String template, String sql, List<String> parameters) {
+        this.name = name;
+        this.template = template;
+        this.sql = sql;
+        this.parameters = Collections.unmodifiableList(parameters);
+    }
+
+    /**
+     * Compiles a query template
+     *
+     * @param name     query name (key in queries.json)
+     * @param template SQL text with {@code ?} or {@code :name} parameters
+     * @return compiled query
+     * @throws IllegalArgumentException if the query is not well formed
+     */
+    public static SqlQuery compile(String name, String template) {
+        if (template == null || template.trim().isEmpty())
+            throw new IllegalArgumentException("Query '" + name + "' is empty");
+        String verb = template.trim().split("\\s+")[0];
+        if (!verb.matches("(?i)" + SQL_VERBS))
+            throw new IllegalArgumentException("Query '" + name + "' does not start with a SQL statement: " + verb);
+
+        StringBuilder sql = new StringBuilder(template.length());
+        List<String> parameters = new ArrayList<>();
+        char quote = 0;
+        int depth = 0;
+        for (int i = 0; i < template.length(); i++) {
+            char c = template.charAt(i);
+            if (quote != 0) {
+                if (c == quote)
+                    quote = 0;
+                sql.append(c);
+            } else if (c == '\'' || c == '"' || c == '`') {
+                quote = c;
+                sql.append(c);
+            } else if (c == '(' || c == ')') {
+                depth += c == '(' ? 1 : -1;
+                if (depth < 0)
+                    throw new IllegalArgumentException("Query '" + name + "' has an unmatched ')' at " + i);
+                sql.append(c);
+            } else if (c == '?') {
+                parameters.add(null);
+                sql.append('?');
+            } else if (c == ':' && i + 1 < template.length() && Character.isJavaIdentifierStart(template.charAt(i + 1))) {
+                int end = i + 1;
+                while (end < template.length() && Character.isJavaIdentifierPart(template.charAt(end)))
+                    end++;
+                parameters.add(template.substring(i + 1, end));
+                sql.append('?');
+                i = end - 1;
+            } else {
+                sql.append(c);
+            }
+        }
+        if (quote != 0)
+            throw new IllegalArgumentException("Query '" + name + "' has an unterminated " + quote + " quote");
+        if (depth != 0)
+            throw new IllegalArgumentException("Query '" + name + "' has an unmatched '('");
+        if (parameters.contains(null) && parameters.stream().anyMatch(p -> p != null))
+            throw new IllegalArgumentException("Query '" + name + "' mixes named and positional parameters");
+        return new SqlQuery(name, template, sql.toString(), parameters);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getTemplate() {
+        return template;
+    }
+
+    /**
+     * Gets the JDBC SQL text with all parameters as {@code ?}
+     *
+     * @return JDBC SQL text
+     */
+    public String getSql() {
+        return sql;
+    }
+
+    /**
+     * Gets the parameter names in bind order ({@code null} for positional parameters)
+     *
+     * @return parameter names
+     */
+    public List<String> getParameters() {
+        return parameters;
+    }
+
+    /**
+     * Prepares this query on a connection. Pooled connections return a cached statement when one exists.
+     *
+     * @param con connection to use
+     * @return prepared statement
+     * @throws SQLException if the statement cannot be prepared
+     */
+    public PreparedStatement prepare(Connection con) throws SQLException {
+        return con.prepareStatement(sql);
+    }
+
+    /**
+     * Prepares this query for a streaming read: a forward-only, read-only statement that is never cached
+     *
+     * @param con connection to use
+     * @return prepared statement
+     * @throws SQLException if the statement cannot be prepared
+     */
+    public PreparedStatement prepareStreaming(Connection con) throws SQLException {
+        return con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+    }
+
+    /**
+     * Binds parameter values in order of appearance
+     *
+     * @param ps     statement prepared from this query
+     * @param values parameter values
+     * @throws SQLException if a value cannot be bound
+     */
+    public void bind(PreparedStatement ps, Object... values) throws SQLException {
+        if (values.length != parameters.size())
+            throw new SQLException("Query '" + name + "' expects " + parameters.size() + " parameter(s), got " + values.length);
+        for (int i = 0; i < values.length; i++)
+            ps.setObject(i + 1, values[i]);
+    }
+
+    /**
+     * Binds named parameter values
+     *
+     * @param ps     statement prepared from this query
+     * @param values parameter values by name
+     * @throws SQLException if a parameter is positional or has no value
+     */
+    public void bind(PreparedStatement ps, Map<String, ?> values) throws SQLException {
+        for (int i = 0; i < parameters.size(); i++) {
+            String parameter = parameters.get(i);
+            if (parameter == null)
+                throw new SQLException("Query '" + name + "' has positional parameter " + (i + 1) + ", bind it by position");
+            if (!values.containsKey(parameter))
+                throw new SQLException("Query '" + name + "' is missing a value for :" + parameter);
+            ps.setObject(i + 1, values.get(parameter));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name + ": " + sql;
+    }
+}
@@ -0,0 +1,147 @@
+package db.shared.utils.database.utils;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Per-connection LRU cache of prepared statements.
+ * <p>
+ * Statements handed out are proxies: {@code close()} clears the parameters and keeps the statement
+ * open for the next caller preparing the same SQL. The least recently used statement is really
+ * closed once the cache is full.
+ * </p>
+ */
+class StatementCache {
+    private final Connection connection;
+    private final LinkedHashMap<String, CachedStatement> statements;
+    private long hits;
+    private long misses;
+
+    StatementCache(Connection connection, int maxSize) {
+        this.connection = connection;
+        this.statements = new LinkedHashMap<String, CachedStatement>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+                if (size() <= maxSize)
+                    return false;
+                eldest.getValue().evicted = true;
+                if (!eldest.getValue().inUse)
+                    closeQuietly(eldest.getValue().statement);
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Gets a cached statement for the SQL or prepares a new one
+     *
+     * @param sql SQL text
+     * @return prepared statement proxy
+     * @throws SQLException if the statement cannot be prepared
+     */
+    synchronized PreparedStatement prepare(String sql) throws SQLException {
+        CachedStatement cached = statements.get(sql);
+        if (cached != null && !cached.inUse) {
+            hits++;
+        } else {
+            misses++;
+            PreparedStatement ps = connection.prepareStatement(sql);
+            if (cached != null) {
+                // same SQL prepared twice in one borrow, hand out an uncached statement
+                return ps;
+            }
+            cached = new CachedStatement(ps);
+            statements.put(sql, cached);
+        }
+        cached.inUse = true;
+        return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                new Class<?>[]{PreparedStatement.class}, new Handle(cached));
+    }
+
+    /**
+     * Closes all cached statements
+     */
+    synchronized void clear() {
+        for (CachedStatement cached : statements.values())
+            closeQuietly(cached.statement);
+        statements.clear();
+    }
+
+    synchronized String getStatistics() {
+        return "statements=" + statements.size() + " hits=" + hits + " misses=" + misses;
+    }
+
+    private synchronized void checkin(CachedStatement cached) {
+        cached.inUse = false;
+        try {
+            cached.statement.clearParameters();
+        } catch (SQLException e) {
+            cached.evicted = true;
+            statements.values().remove(cached);
+        }
+        if (cached.evicted)
+            closeQuietly(cached.statement);
+    }
+
+    private static void closeQuietly(PreparedStatement ps) {
+        try {
+            ps.close();
+        } catch (SQLException e) {
+            // ignore
+        }
+    }
+
+    private static class CachedStatement {
+        private final PreparedStatement statement;
+        private boolean inUse;
+        private boolean evicted;
+
+        CachedStatement(PreparedStatement statement) {
+            this.statement = statement;
+        }
+    }
+
+    /**
+     * One checkout of a cached statement
+     */
+    private class Handle implements InvocationHandler {
+        private final CachedStatement cached;
+        private boolean open = true;
+
+        Handle(CachedStatement cached) {
+            this.cached = cached;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (open) {
+                        open = false;
+                        checkin(cached);
+                    }
+                    return null;
+                case "isClosed":
+                    return !open || cached.statement.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+            }
+            if (!open)
+                throw new SQLException("Statement is closed");
+            try {
+                return method.invoke(cached.statement, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package db.shared.utils.database.utils;
+
+import db.shared.utils.CommonUtils;
+import db.shared.utils.database.models.CustomerService;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fills tbl_users with synthetic users for volume testing.
+ * <p>
+ * Rows are built with the {@link CommonUtils} generators and written with multi-row INSERT statements by
+ * parallel writers, each on its own pooled connection. The writers take the batches in turn and batch n
+ * draws from its own {@code Random} seeded from the seed and n, so the same seed, row count and batch size
+ * produce the same users whatever the number of writers (only their insertion order, and so their ids, vary).
+ * </p>
+ * Parameters (ex_params or environment):
+ * <ul>
+ * <li>datagen_rows - number of users to insert (default 100000)</li>
+ * <li>datagen_batch_size - rows per INSERT statement (default 1000)</li>
+ * <li>datagen_writers - parallel writers, at most "db_pool_size" (default 4)</li>
+ * <li>datagen_seed - random seed (default 1)</li>
+ * </ul>
+ */
+public class UserDataGenerator {
+    public static final long DEFAULT_ROWS = 100000L;
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+    public static final int DEFAULT_WRITERS = 4;
+    public static final long DEFAULT_SEED = 1L;
+
+    private static final String[] COLUMNS = {"first_name", "last_name", "email_id", "contact_no"};
+    private static final long REPORT_INTERVAL = 5 * 1000L;
+
+    private final long rows;
+    private final int batchSize;
+    private final int writers;
+    private final long seed;
+    private final AtomicLong inserted = new AtomicLong();
+    private final AtomicLong nextBatch = new AtomicLong();
+
+    /**
+     * Creates a generator
+     *
+     * @param rows      number of users to insert
+     * @param batchSize rows per INSERT statement
+     * @param writers   number of parallel writers
+     * @param seed      random seed
+     */
+    public UserDataGenerator(long rows, int batchSize, int writers, long seed) {
+        if (rows < 0 || batchSize < 1 || writers < 1)
+            throw new IllegalArgumentException("Invalid generator settings: rows=" + rows + " batch_size=" + batchSize + " writers=" + writers);
+        this.rows = rows;
+        this.batchSize = batchSize;
+        this.writers = writers;
+        this.seed = seed;
+    }
+
+    /**
+     * Creates a generator from the datagen_* parameters
+     *
+     * @return generator
+     */
+    public static UserDataGenerator fromExParams() {
+        return fromExParams(DBConnection.getParam("datagen_rows", DEFAULT_ROWS));
+    }
+
+    /**
+     * Creates a generator for a number of users, the other settings from the datagen_* parameters
+     *
+     * @param rows number of users to insert
+     * @return generator
+     */
+    public static UserDataGenerator fromExParams(long rows) {
+        return new UserDataGenerator(rows,
+                (int) DBConnection.getParam("datagen_batch_size", DEFAULT_BATCH_SIZE),
+                (int) DBConnection.getParam("datagen_writers", DEFAULT_WRITERS),
+                DBConnection.getParam("datagen_seed", DEFAULT_SEED));
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public int getWriters() {
+        return writers;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Inserts the users and waits until all writers are done
+     *
+     * @return number of inserted rows
+     * @throws SQLException if a writer fails
+     */
+    public long run() throws SQLException {
+        int maxWriters = DBConnectionPool.getMySqlPool().getMaxSize();
+        long batches = (rows + batchSize - 1) / batchSize;
+        int threads = (int) Math.max(1, Math.min(Math.min(writers, maxWriters), batches));
+        System.out.println("-->UserDataGenerator: " + rows + " rows in " + batches + " batch(es) of " + batchSize +
+                ", seed " + seed + ", " + threads + " writer(s)" + (threads < writers ? " (db_pool_size is " + maxWriters + ")" : ""));
+
+        nextBatch.set(0);
+        long ts = System.currentTimeMillis();
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread th = new Thread(r, "UserDataGenerator-reporter");
+            th.setDaemon(true);
+            return th;
+        });
+        reporter.scheduleAtFixedRate(() -> report(ts), REPORT_INTERVAL, REPORT_INTERVAL, TimeUnit.MILLISECONDS);
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> new Thread(r, "UserDataGenerator-writer"));
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(pool.submit(() -> {
+                    write(batches);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures)
+                future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while generating users");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException)
+                throw (SQLException) cause;
+            throw new SQLException("User generation failed: " + cause.getMessage(), cause);
+        } finally {
+            pool.shutdownNow();
+            reporter.shutdownNow();
+        }
+        report(ts);
+        return inserted.get();
+    }
+
+    // inserts the next batches until all are taken
+    private void write(long batches) throws SQLException {
+        try (Connection con = DBUtilities.setupMySqlDBConnection()) {
+            con.setAutoCommit(false);
+            // full batches reuse one statement, the remainder gets its own
+            try (PreparedStatement full = rows >= batchSize ? con.prepareStatement(insertSql(batchSize)) : null) {
+                for (long batch = nextBatch.getAndIncrement(); batch < batches; batch = nextBatch.getAndIncrement()) {
+                    int count = (int) Math.min(batchSize, rows - batch * batchSize);
+                    Random random = new Random(seed * 1000003L + batch);
+                    if (count == batchSize) {
+                        insert(con, full, count, random);
+                    } else {
+                        try (PreparedStatement last = con.prepareStatement(insertSql(count))) {
+                            insert(con, last, count, random);
+                        }
+                    }
+                }
+            } catch (SQLException | RuntimeException e) {
+                con.rollback();
+                throw e;
+            }
+        }
+    }
+
+    private void insert(Connection con, PreparedStatement ps, int count, Random random) throws SQLException {
+        int index = 1;
+        for (int i = 0; i < count; i++) {
+            ps.setString(index++, CommonUtils.generateRandomFirstName(random));
+            ps.setString(index++, CommonUtils.generateRandomLastName(random));
+            ps.setString(index++, CommonUtils.generateRandomEmail(random, 9));
+            ps.setString(index++, CommonUtils.generateRandomPhoneNumber(random));
+        }
+        ps.executeUpdate();
+        con.commit();
+        inserted.addAndGet(count);
+    }
+
+    private static String insertSql(int count) {
+        String row = "(" + String.join(", ", Collections.nCopies(COLUMNS.length, "?")) + ")";
+        return "INSERT INTO " + CustomerService.USERS_TABLE + " (" + String.join(", ", COLUMNS) + ") VALUES " +
+                String.join(", ", Collections.nCopies(count, row));
+    }
+
+    private void report(long startTime) {
+        long elapsed = Math.max(1, System.currentTimeMillis() - startTime);
+        long done = inserted.get();
+        System.out.println("-->UserDataGenerator: " + done + "/" + rows + " rows, " + (done * 1000 / elapsed) + " rows/sec");
+    }
+
+    public static void main(String[] args) throws SQLException {
+        try {
+            UserDataGenerator.fromExParams().run();
+        } finally {
+            DBConnectionPool.shutdownAll();
+        }
+    }
+}